@@ -0,0 +1,52 @@
+package org.lonelysail.qqbot.benchmark;
+
+import org.lonelysail.qqbot.Utils;
+import org.lonelysail.qqbot.websocket.codec.BroadcastMessage;
+import org.lonelysail.qqbot.websocket.codec.TextColor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 广播消息渲染：每条消息都是新解码出的分段列表，内容重复与否都走同样的拼接
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    private final Utils utils = new Utils();
+    private List<BroadcastMessage.Section> repeated;
+    private long counter;
+
+    @Setup
+    public void setup() {
+        this.repeated = List.of(
+                new BroadcastMessage.Section(TextColor.GOLD, "[QQ] "),
+                new BroadcastMessage.Section(TextColor.AQUA, "Steve"),
+                new BroadcastMessage.Section(TextColor.WHITE, "：大家好，今天服务器几点重启？"));
+    }
+
+    @Benchmark
+    public String repeated() {
+        return this.utils.toStringMessage(new ArrayList<>(this.repeated));
+    }
+
+    @Benchmark
+    public String unique() {
+        List<BroadcastMessage.Section> sections = new ArrayList<>(this.repeated);
+        sections.add(new BroadcastMessage.Section(TextColor.GRAY, Long.toString(this.counter++)));
+        return this.utils.toStringMessage(sections);
+    }
+}
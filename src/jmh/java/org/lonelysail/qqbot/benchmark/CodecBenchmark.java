@@ -0,0 +1,77 @@
+package org.lonelysail.qqbot.benchmark;
+
+import org.lonelysail.qqbot.Utils;
+import org.lonelysail.qqbot.websocket.codec.Codecs;
+import org.lonelysail.qqbot.websocket.codec.Envelope;
+import org.lonelysail.qqbot.websocket.codec.EventMessage;
+import org.lonelysail.qqbot.websocket.codec.JsonWire;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 旧的 HashMap/Base64 编解码与流式 JSON 编解码的对比
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    private final Utils utils = new Utils();
+    private HashMap<String, Object> legacyMessage;
+    private String legacyFrame;
+    private EventMessage event;
+    private byte[] jsonFrame;
+    private String base64Frame;
+
+    @Setup
+    public void setup() {
+        this.legacyMessage = new HashMap<>();
+        this.legacyMessage.put("type", "player_chat");
+        this.legacyMessage.put("data", List.of("Steve", "你好，世界！Hello world"));
+        this.legacyFrame = this.utils.encode(this.legacyMessage);
+
+        this.event = new EventMessage(42, "player_chat", List.of("Steve", "你好，世界！Hello world"));
+        this.jsonFrame = JsonWire.toBytes(this.event);
+        this.base64Frame = Base64.getEncoder().encodeToString(this.jsonFrame);
+    }
+
+    @Benchmark
+    public String legacyEncode() {
+        return this.utils.encode(this.legacyMessage);
+    }
+
+    @Benchmark
+    public HashMap<String, ?> legacyDecode() {
+        return this.utils.decode(this.legacyFrame);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return JsonWire.toBytes(this.event);
+    }
+
+    @Benchmark
+    public Envelope jsonDecode() throws IOException {
+        return Codecs.JSON.read(ByteBuffer.wrap(this.jsonFrame));
+    }
+
+    @Benchmark
+    public Envelope base64Decode() throws IOException {
+        return Codecs.LEGACY.read(this.base64Frame);
+    }
+}
@@ -0,0 +1,86 @@
+package org.lonelysail.qqbot.benchmark;
+
+import org.bukkit.plugin.Plugin;
+import org.lonelysail.qqbot.metrics.Metrics;
+import org.lonelysail.qqbot.websocket.ConnectionSupervisor;
+import org.lonelysail.qqbot.websocket.Endpoint;
+import org.lonelysail.qqbot.websocket.WsSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// permessage-deflate 的代价与收益：分别发送低于阈值的小事件和较大的命令输出，结束时打印压缩率与压缩耗时
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+    @Param({"false", "true"})
+    public boolean compression;
+
+    private LoopbackBot bot;
+    private ConnectionSupervisor supervisor;
+    private WsSender sender;
+    private final Metrics metrics = new Metrics();
+    private final List<String> death = List.of("Steve", "Steve 被苦力怕炸死了");
+    private final List<String> output = new ArrayList<>();
+
+    @Setup
+    public void setup() throws InterruptedException {
+        for (int i = 0; i < 40; i++) output.add(String.format("[12:00:%02d INFO]: Player%d joined the game at world(%d, 64, %d)", i, i, i * 16, -i * 16));
+        this.bot = LoopbackBot.launch(this.compression);
+        Plugin plugin = Fixtures.plugin();
+        var config = Fixtures.config(this.bot.uri(), "json");
+        config.set("compression.enabled", this.compression);
+        config.set("queue.batch_window", 0);
+        this.supervisor = new ConnectionSupervisor(plugin.getLogger(), config);
+        this.sender = new WsSender(plugin, config, Endpoint.load(config).get(0), this.supervisor, this.metrics);
+        this.sender.getLink().start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!this.sender.isConnected()) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("无法连接到 LoopbackBot");
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf(Locale.ROOT, "%n压缩率 %.1f%%，压缩 %d 条共 %.1f ms，%d 条低于阈值未压缩，发送 %d 字节%n",
+                this.metrics.compressionRatio() * 100, this.metrics.deflateTime.count(), this.metrics.deflateTime.sum() / 1e6,
+                this.metrics.deflateSkipped.sum(), this.metrics.deflateBytesOut.sum() + this.metrics.bytesOut.sum() - this.metrics.deflateBytesIn.sum());
+        this.supervisor.shutdown();
+        this.sender.shutdown();
+        this.bot.shutdown();
+    }
+
+    // 低于阈值的小事件：开启压缩时只多一次大小判断（player_chat 按协议不回复，等待响应的事件用 player_death）
+    @Benchmark
+    @Threads(4)
+    public boolean smallEvent() {
+        return this.sender.sendData("player_death", this.death, true);
+    }
+
+    // 约 2.5 KiB 的命令输出（用 player_death 发送：LoopbackBot 会把 message 类型当作广播解析，player_chat 不回复）
+    @Benchmark
+    @Threads(4)
+    public boolean largeEvent() {
+        return this.sender.sendData("player_death", this.output, true);
+    }
+}
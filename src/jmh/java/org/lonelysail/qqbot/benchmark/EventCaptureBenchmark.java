@@ -0,0 +1,83 @@
+package org.lonelysail.qqbot.benchmark;
+
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.lonelysail.qqbot.server.GameEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// 玩家进入/离开事件两种捕获方式在触发线程上的开销（不做检查，只输出数字）：
+// lambda 方式是旧的写法，异步任务闭包持有整个事件对象，直到发送线程读取玩家名；
+// record 方式在触发线程上只复制 UUID、名字和世界名。两者每个事件的分配量相近（可配合 -prof gc 查看），
+// 改进在于等待发送期间存活的内存：按 1000 事件/秒触发、测量并检查 GC 后存活内存的是 EventCaptureRetention。
+// inFlight 模拟机器人慢了一秒时等待发送的 1000 个对象
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventCaptureBenchmark {
+    private static final int IN_FLIGHT = 1000;
+
+    private final Object[] inFlight = new Object[IN_FLIGHT];
+    private int next;
+    private Player[] players;
+    private int player;
+
+    @Setup
+    public void setup() {
+        World world = Fixtures.proxy(World.class, (method, args) -> method.equals("getName") ? "world" : null);
+        this.players = new Player[64];
+        for (int i = 0; i < this.players.length; i++) {
+            UUID uuid = UUID.randomUUID();
+            String name = "Player" + i;
+            this.players[i] = Fixtures.proxy(Player.class, (method, args) -> switch (method) {
+                case "getUniqueId" -> uuid;
+                case "getName" -> name;
+                case "getWorld" -> world;
+                default -> null;
+            });
+        }
+    }
+
+    private Player nextPlayer() {
+        return this.players[this.player++ & (this.players.length - 1)];
+    }
+
+    // 放进等待发送的环形队列，覆盖一秒前的对象
+    private void enqueue(Object pending) {
+        this.inFlight[this.next] = pending;
+        this.next = (this.next + 1) % IN_FLIGHT;
+    }
+
+    @Benchmark
+    public void lambdaCapture(Blackhole blackhole) {
+        PlayerJoinEvent join = new PlayerJoinEvent(this.nextPlayer(), "joined the game");
+        Runnable joined = () -> blackhole.consume(join.getPlayer().getName());
+        this.enqueue(joined);
+        PlayerQuitEvent quit = new PlayerQuitEvent(this.nextPlayer(), "left the game");
+        Runnable left = () -> blackhole.consume(quit.getPlayer().getName());
+        this.enqueue(left);
+    }
+
+    @Benchmark
+    public void recordCapture() {
+        this.enqueue(GameEvent.PlayerJoined.of(new PlayerJoinEvent(this.nextPlayer(), "joined the game")));
+        this.enqueue(GameEvent.PlayerLeft.of(new PlayerQuitEvent(this.nextPlayer(), "left the game")));
+    }
+}
@@ -0,0 +1,191 @@
+package org.lonelysail.qqbot.benchmark;
+
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.lonelysail.qqbot.server.GameEvent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// 玩家进入/离开事件捕获方式的存活对象检查：按固定速率交替触发进入与离开事件，
+// 每个事件捕获后排队，模拟机器人慢了 delay 毫秒才被发送线程取走。测量阶段每秒做一次 Full GC，
+// 记录 GC 后的堆占用减去空队列时的基线，即等待发送的对象让多少内存保持存活。
+// lambda 是旧写法，闭包持有整个事件；record 是现在 EventListener 的写法，只复制 UUID、名字和世界名。
+// 改进在于存活内存而不是分配量：两种写法每个事件的分配量相近，这里只作参考输出。
+// 离开的玩家每次都是新对象，服务器已经不再引用它，只有排队的捕获对象可能让它存活；
+// state 为这个玩家对象附带的字节数，代表实体、背包等随 Player 一起被持有的状态；分配量里也包含创建它的开销，两种写法相同。
+// 两种写法都运行时，record 的存活内存超过 lambda 的 max_ratio 倍即视为退化，以退出码 1 结束。
+// 用法（jmh 的类路径）：java org.lonelysail.qqbot.benchmark.EventCaptureRetention rate=1000 delay=1000 state=4096
+// 参数：rate 每秒事件数，delay 排队毫秒数，duration/warmup 秒数，players 在线玩家数，mode lambda、record 或 both，
+// max_ratio 允许的存活内存比例（默认 0.5）
+public final class EventCaptureRetention {
+    private final Map<String, String> options;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final World world = Fixtures.proxy(World.class, (method, args) -> method.equals("getName") ? "world" : null);
+    private final List<Player> players = new ArrayList<>();
+    private long sink;
+
+    private EventCaptureRetention(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split > 0) options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+        if (!new EventCaptureRetention(options).run()) System.exit(1);
+    }
+
+    private long option(String name, long fallback) {
+        String value = this.options.get(name);
+        return value == null ? fallback : Long.parseLong(value);
+    }
+
+    private double option(String name, double fallback) {
+        String value = this.options.get(name);
+        return value == null ? fallback : Double.parseDouble(value);
+    }
+
+    // 等待发送的捕获对象与它入队的时间
+    private record Pending(long queuedAt, Object captured) {}
+
+    // 一次运行的结果：GC 后存活字节数的平均值与最大值、平均排队数量、每个事件的分配字节数、实际速率
+    private record Result(long retained, long maxRetained, double queued, double allocatedPerEvent, double rate) {}
+
+    // 返回 false 表示 record 的存活内存没有明显低于 lambda
+    private boolean run() {
+        long rate = this.option("rate", 1000);
+        long delay = TimeUnit.MILLISECONDS.toNanos(this.option("delay", 1000));
+        long duration = TimeUnit.SECONDS.toNanos(this.option("duration", 10));
+        long warmup = TimeUnit.SECONDS.toNanos(this.option("warmup", 3));
+        int state = (int) this.option("state", 4096);
+        String mode = this.options.getOrDefault("mode", "both");
+        for (int i = 0; i < this.option("players", 100); i++) this.players.add(this.player("Player" + i, 0));
+
+        System.out.printf(Locale.ROOT, "目标 %d 事件/秒，排队 %d 毫秒，离开的玩家对象附带 %d 字节，预热 %d 秒，测量 %d 秒%n",
+                rate, TimeUnit.NANOSECONDS.toMillis(delay), state,
+                TimeUnit.NANOSECONDS.toSeconds(warmup), TimeUnit.NANOSECONDS.toSeconds(duration));
+        Result lambda = null;
+        Result record = null;
+        if (!mode.equals("record")) {
+            this.drive(true, rate, delay, warmup, state);
+            lambda = this.report("lambda", this.drive(true, rate, delay, duration, state));
+        }
+        if (!mode.equals("lambda")) {
+            this.drive(false, rate, delay, warmup, state);
+            record = this.report("record", this.drive(false, rate, delay, duration, state));
+        }
+        if (this.sink == 42) System.out.println();
+        if (lambda == null || record == null) return true;
+
+        double maxRatio = this.option("max_ratio", 0.5);
+        // lambda 没有留下可测的存活内存时无法比较，同样视为失败
+        double ratio = lambda.retained() == 0 ? Double.POSITIVE_INFINITY : (double) record.retained() / lambda.retained();
+        System.out.printf(Locale.ROOT, "对比：record 的存活内存为 lambda 的 %.1f%%（少 %.1f KiB），每个事件的分配量相差 %.0f 字节%n",
+                ratio * 100, (lambda.retained() - record.retained()) / 1024.0,
+                lambda.allocatedPerEvent() - record.allocatedPerEvent());
+        if (ratio > maxRatio) {
+            System.out.printf(Locale.ROOT, "失败：record 的存活内存超过 lambda 的 %.0f%%%n", maxRatio * 100);
+            return false;
+        }
+        System.out.printf(Locale.ROOT, "通过：record 的存活内存不超过 lambda 的 %.0f%%%n", maxRatio * 100);
+        return true;
+    }
+
+    private Player player(String name, int state) {
+        UUID uuid = UUID.randomUUID();
+        // 代理的应答闭包持有 entity，它与玩家对象同生共死
+        byte[] entity = new byte[state];
+        return Fixtures.proxy(Player.class, (method, args) -> switch (method) {
+            case "getUniqueId" -> uuid;
+            case "getName" -> name;
+            case "getWorld" -> this.world;
+            case "hashCode" -> entity.length;
+            default -> null;
+        });
+    }
+
+    private Object capture(boolean lambda, long fired, int state) {
+        if (fired % 2 == 0) {
+            PlayerJoinEvent join = new PlayerJoinEvent(this.players.get((int) (fired / 2 % this.players.size())),
+                    "joined the game");
+            if (!lambda) return GameEvent.PlayerJoined.of(join);
+            return (Runnable) () -> this.sink += join.getPlayer().getName().length();
+        }
+        PlayerQuitEvent quit = new PlayerQuitEvent(this.player("Leaving" + fired, state), "left the game");
+        if (!lambda) return GameEvent.PlayerLeft.of(quit);
+        return (Runnable) () -> this.sink += quit.getPlayer().getName().length();
+    }
+
+    // 模拟发送线程取走对象
+    private void send(Object captured) {
+        if (captured instanceof Runnable task) task.run();
+        else if (captured instanceof GameEvent.PlayerJoined joined) this.sink += joined.name().length();
+        else if (captured instanceof GameEvent.PlayerLeft left) this.sink += left.name().length();
+    }
+
+    private long liveHeap() {
+        System.gc();
+        return this.memory.getHeapMemoryUsage().getUsed();
+    }
+
+    // 按固定间隔触发事件，落后时（例如刚做完 GC）不等待直接追赶；每秒采样一次 GC 后的堆占用
+    private Result drive(boolean lambda, long rate, long delay, long nanos, int state) {
+        ArrayDeque<Pending> queue = new ArrayDeque<>();
+        long baseline = this.liveHeap();
+        long interval = Math.max(1, 1_000_000_000L / rate);
+        long sampleInterval = TimeUnit.SECONDS.toNanos(1);
+        long allocatedBefore = this.threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long next = start;
+        long nextSample = start + Math.max(delay, sampleInterval);
+        long fired = 0;
+        long retained = 0;
+        long maxRetained = 0;
+        long queued = 0;
+        int samples = 0;
+        while (next - start < nanos) {
+            long now = System.nanoTime();
+            while (!queue.isEmpty() && now - queue.peekFirst().queuedAt() >= delay) this.send(queue.pollFirst().captured());
+            queue.addLast(new Pending(now, this.capture(lambda, fired++, state)));
+            if (now >= nextSample) {
+                long live = Math.max(0, this.liveHeap() - baseline);
+                retained += live;
+                maxRetained = Math.max(maxRetained, live);
+                queued += queue.size();
+                samples++;
+                nextSample += sampleInterval;
+            }
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = this.threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        while (!queue.isEmpty()) this.send(queue.pollFirst().captured());
+        return new Result(samples == 0 ? 0 : retained / samples, maxRetained, samples == 0 ? 0 : (double) queued / samples,
+                fired == 0 ? 0 : (double) allocated / fired, fired / seconds);
+    }
+
+    private Result report(String name, Result result) {
+        System.out.printf(Locale.ROOT, "%s：%.0f 事件/秒，平均排队 %.0f 个，GC 后存活 %.1f KiB（最大 %.1f KiB，每个排队对象 %.0f 字节），每个事件分配 %.0f 字节%n",
+                name, result.rate(), result.queued(), result.retained() / 1024.0, result.maxRetained() / 1024.0,
+                result.queued() == 0 ? 0.0 : result.retained() / result.queued(), result.allocatedPerEvent());
+        return result;
+    }
+}
@@ -0,0 +1,89 @@
+package org.lonelysail.qqbot.benchmark;
+
+import org.bukkit.configuration.Configuration;
+import org.bukkit.plugin.Plugin;
+import org.lonelysail.qqbot.metrics.Metrics;
+import org.lonelysail.qqbot.server.GameEvent;
+import org.lonelysail.qqbot.websocket.ConnectionSupervisor;
+import org.lonelysail.qqbot.websocket.Endpoint;
+import org.lonelysail.qqbot.websocket.EventRelay;
+import org.lonelysail.qqbot.websocket.WsSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// 同一个事件发给多个机器人：每个连接各自编码与写入，比较 1 个与多个机器人连接时每个事件的开销
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FanOutBenchmark {
+    @Param({"1", "3"})
+    public int bots;
+
+    private final List<LoopbackBot> loopbacks = new ArrayList<>();
+    private final List<WsSender> senders = new ArrayList<>();
+    private ConnectionSupervisor supervisor;
+    private EventRelay relay;
+    private final GameEvent.PlayerChat chat = new GameEvent.PlayerChat(UUID.randomUUID(), "Steve", "world", "你好，世界！Hello world");
+
+    @Setup
+    public void setup() throws InterruptedException {
+        Plugin plugin = Fixtures.plugin();
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (int i = 0; i < this.bots; i++) {
+            LoopbackBot bot = LoopbackBot.launch();
+            this.loopbacks.add(bot);
+            entries.add(Map.of("id", "bot" + i, "uri", bot.uri().toString()));
+        }
+        Configuration config = Fixtures.config(this.loopbacks.get(0).uri(), "json");
+        config.set("endpoints", entries);
+        // 不等待合并窗口，测量的是编码与写入而不是窗口长度
+        config.set("queue.batch_window", 0);
+        this.supervisor = new ConnectionSupervisor(plugin.getLogger(), config);
+        List<Endpoint> endpoints = Endpoint.load(config);
+        for (Endpoint endpoint : endpoints) {
+            WsSender sender = new WsSender(plugin, config, endpoint, this.supervisor, new Metrics());
+            sender.getLink().start();
+            this.senders.add(sender);
+        }
+        this.relay = new EventRelay(endpoints, this.senders);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!this.senders.stream().allMatch(WsSender::isConnected)) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("无法连接到 LoopbackBot");
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.supervisor.shutdown();
+        this.senders.forEach(WsSender::shutdown);
+        this.loopbacks.forEach(LoopbackBot::shutdown);
+    }
+
+    // 聊天事件不等待响应，只等到事件写入所有连接
+    @Benchmark
+    @Threads(8)
+    public boolean chatConcurrent() {
+        return this.relay.send(this.chat).join();
+    }
+}
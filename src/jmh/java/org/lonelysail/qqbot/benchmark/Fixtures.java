@@ -0,0 +1,100 @@
+package org.lonelysail.qqbot.benchmark;
+
+import org.bukkit.Server;
+import org.bukkit.configuration.Configuration;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// 在没有服务器的 JVM 里运行插件代码所需的最小环境：插件、服务器与调度器都是动态代理，
+// 调度器把"主线程任务"直接在调用线程上执行
+public final class Fixtures {
+    private static final Logger LOGGER = Logger.getLogger("QQBot-Benchmark");
+
+    static {
+        // 连接与超时的日志会干扰测试结果
+        LOGGER.setLevel(Level.SEVERE);
+    }
+
+    private Fixtures() {
+    }
+
+    public static Plugin plugin() {
+        File dataFolder;
+        try {
+            dataFolder = Files.createTempDirectory("qqbot-benchmark").toFile();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        BukkitScheduler scheduler = proxy(BukkitScheduler.class, (method, args) -> {
+            if (method.equals("runTask") || method.equals("runTaskAsynchronously")) ((Runnable) args[1]).run();
+            return null;
+        });
+        Server server = proxy(Server.class, (method, args) -> switch (method) {
+            case "getScheduler" -> scheduler;
+            case "getLogger" -> LOGGER;
+            case "getOnlinePlayers", "getWorlds" -> List.of();
+            case "isPrimaryThread" -> true;
+            default -> null;
+        });
+        return proxy(Plugin.class, (method, args) -> switch (method) {
+            case "getServer" -> server;
+            case "getLogger" -> LOGGER;
+            case "getDataFolder" -> dataFolder;
+            case "getName" -> "QQBot";
+            case "isEnabled" -> true;
+            default -> null;
+        });
+    }
+
+    // 与 config.yml 默认值相同，只是不写发件箱，连接到给定的机器人地址
+    public static Configuration config(URI uri, String codec) {
+        MemoryConfiguration config = new MemoryConfiguration();
+        config.set("uri", uri.toString());
+        config.set("token", LoopbackBot.TOKEN);
+        config.set("name", "Benchmark");
+        config.set("codec", codec);
+        config.set("outbox.enabled", false);
+        return config;
+    }
+
+    public interface Answer {
+        Object answer(String method, Object[] args);
+    }
+
+    // 未处理的方法返回 null，基本类型返回零值
+    @SuppressWarnings("unchecked")
+    public static <T> T proxy(Class<T> type, Answer answer) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return type.getSimpleName() + "Proxy";
+            }
+            Object result = answer.answer(method.getName(), args);
+            if (result != null || !method.getReturnType().isPrimitive()) return result;
+            Class<?> returnType = method.getReturnType();
+            if (returnType == boolean.class) return false;
+            if (returnType == void.class) return null;
+            if (returnType == char.class) return '\0';
+            if (returnType == long.class) return 0L;
+            if (returnType == double.class) return 0d;
+            if (returnType == float.class) return 0f;
+            if (returnType == byte.class) return (byte) 0;
+            if (returnType == short.class) return (short) 0;
+            return 0;
+        });
+    }
+}
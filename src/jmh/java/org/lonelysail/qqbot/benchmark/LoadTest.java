@@ -0,0 +1,311 @@
+package org.lonelysail.qqbot.benchmark;
+
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.configuration.Configuration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.lonelysail.qqbot.metrics.LatencyHistogram;
+import org.lonelysail.qqbot.metrics.Metrics;
+import org.lonelysail.qqbot.server.BuiltinHandlers;
+import org.lonelysail.qqbot.server.ChatLimiter;
+import org.lonelysail.qqbot.server.EventFilter;
+import org.lonelysail.qqbot.server.EventListener;
+import org.lonelysail.qqbot.server.GameEvent;
+import org.lonelysail.qqbot.server.MainThreadExecutor;
+import org.lonelysail.qqbot.server.SnapshotService;
+import org.lonelysail.qqbot.websocket.ConnectionSupervisor;
+import org.lonelysail.qqbot.websocket.Endpoint;
+import org.lonelysail.qqbot.websocket.EventRelay;
+import org.lonelysail.qqbot.websocket.WsListener;
+import org.lonelysail.qqbot.websocket.WsSender;
+import org.lonelysail.qqbot.websocket.rpc.RpcRegistry;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// 端到端压力测试：LoopbackBot 扮演机器人，动态代理的服务器有自己的"主线程"与调度器，
+// 驱动线程按目标速率构造 Bukkit 事件交给 EventListener，机器人同时按速率发送广播、命令与玩家列表请求。
+// 预热之后统计实际的事件吞吐、事件从触发到机器人确认的 p50/p99 延迟，以及堆分配速率与 GC 次数。
+// 用法（jmh 的类路径）：java org.lonelysail.qqbot.benchmark.LoadTest rate=5000 duration=30 latency=20 failure=0.01
+// 参数：rate 每秒事件数，duration/warmup 秒数，players 在线玩家数，codec json 或 base64，deflate true/false，
+// latency/failure/drop 机器人注入的延迟（毫秒）、失败比例与不回复比例，requests 机器人每种请求的每秒次数，chat_limit true/false
+public final class LoadTest {
+    private static final String[] REQUEST_TYPES = {"message", "command", "player_list"};
+
+    private final Map<String, String> options;
+    private final ScheduledExecutorService mainThread;
+    private volatile Thread primaryThread;
+    private final ScheduledExecutorService asyncPool = Executors.newScheduledThreadPool(2, daemon("Craft Scheduler Thread"));
+    private final LongAdder broadcasts = new LongAdder();
+    private final List<Player> players = new ArrayList<>();
+
+    // 只在测量阶段记录：事件交给 EventRelay 到机器人确认（聊天事件为写入连接）的时间
+    private final LatencyHistogram eventLatency = new LatencyHistogram();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean measuring;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+        this.mainThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = daemon("Server thread").newThread(runnable);
+            this.primaryThread = thread;
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split > 0) options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+        new LoadTest(options).run();
+        System.exit(0);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private double option(String name, double fallback) {
+        String value = this.options.get(name);
+        return value == null ? fallback : Double.parseDouble(value);
+    }
+
+    private String option(String name, String fallback) {
+        return this.options.getOrDefault(name, fallback);
+    }
+
+    // 记录每个事件的结果与延迟，事件仍然经过 EventListener 交到这里
+    private final class TimedRelay extends EventRelay {
+        TimedRelay(List<Endpoint> endpoints, List<WsSender> senders) {
+            super(endpoints, senders);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> send(GameEvent event) {
+            long start = System.nanoTime();
+            CompletableFuture<Boolean> result = super.send(event);
+            if (measuring) {
+                result.whenComplete((success, error) -> {
+                    eventLatency.record(System.nanoTime() - start);
+                    if (Boolean.TRUE.equals(success)) succeeded.increment();
+                    else failed.increment();
+                });
+            }
+            return result;
+        }
+    }
+
+    private void run() throws Exception {
+        double rate = this.option("rate", 2000);
+        long duration = TimeUnit.SECONDS.toNanos((long) this.option("duration", 10));
+        long warmup = TimeUnit.SECONDS.toNanos((long) this.option("warmup", 3));
+        boolean deflate = Boolean.parseBoolean(this.option("deflate", "false"));
+
+        LoopbackBot bot = LoopbackBot.launch(deflate)
+                .faults((long) this.option("latency", 0), this.option("failure", 0), this.option("drop", 0));
+        Plugin plugin = this.plugin((int) this.option("players", 100));
+        Configuration config = Fixtures.config(bot.uri(), this.option("codec", "json"));
+        config.set("compression.enabled", deflate);
+
+        ConnectionSupervisor supervisor = new ConnectionSupervisor(plugin.getLogger(), config);
+        Metrics metrics = new Metrics();
+        MainThreadExecutor mainThread = new MainThreadExecutor(plugin);
+        SnapshotService snapshots = new SnapshotService(plugin, 40);
+        snapshots.start();
+        RpcRegistry rpc = new RpcRegistry(plugin.getLogger(), mainThread, 4, metrics);
+        new BuiltinHandlers(plugin, config, mainThread, snapshots).register(rpc);
+        Endpoint endpoint = Endpoint.load(config).get(0);
+        WsSender sender = new WsSender(plugin, config, endpoint, supervisor, metrics);
+        WsListener listener = new WsListener(plugin, config, endpoint, supervisor, rpc, mainThread, metrics);
+        ChatLimiter limiter = Boolean.parseBoolean(this.option("chat_limit", "false")) ? new ChatLimiter(config) : null;
+        EventListener events = new EventListener(new TimedRelay(List.of(endpoint), List.of(sender)), limiter, EventFilter.ALLOW_ALL);
+
+        sender.getLink().start();
+        listener.getLink().start();
+        long connectDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!sender.isOpen() || !listener.isOpen()) {
+            if (System.nanoTime() > connectDeadline) throw new IllegalStateException("无法连接到 LoopbackBot");
+            Thread.sleep(10);
+        }
+        double requestRate = this.option("requests", 20);
+        if (requestRate > 0) for (String type : REQUEST_TYPES) bot.traffic(type, requestRate);
+
+        System.out.printf(Locale.ROOT, "目标 %.0f 事件/秒，预热 %d 秒，测量 %d 秒%n", rate,
+                TimeUnit.NANOSECONDS.toSeconds(warmup), TimeUnit.NANOSECONDS.toSeconds(duration));
+        this.drive(events, rate, warmup);
+
+        Sample before = Sample.take(bot, this.broadcasts);
+        bot.resetRequestLatency();
+        this.measuring = true;
+        long fired = this.drive(events, rate, duration);
+        this.measuring = false;
+        Sample after = Sample.take(bot, this.broadcasts);
+        // 等待最后一批事件的确认
+        Thread.sleep(500);
+
+        this.report(fired, before, after, bot);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        supervisor.shutdown(deadline);
+        sender.shutdown(deadline);
+        listener.shutdown(deadline);
+        rpc.shutdown(deadline);
+        snapshots.stop();
+        bot.shutdown();
+    }
+
+    // 按固定间隔触发事件，落后时不等待直接追赶；返回触发的事件数
+    private long drive(EventListener events, double rate, long nanos) {
+        long interval = Math.max(1, (long) (1e9 / rate));
+        long start = System.nanoTime();
+        long next = start;
+        long fired = 0;
+        while (next - start < nanos) {
+            Player player = this.players.get((int) (fired % this.players.size()));
+            switch ((int) (fired % 10)) {
+                case 0 -> events.playerJoin(new PlayerJoinEvent(player, "joined the game"));
+                case 1 -> events.PlayerQuit(new PlayerQuitEvent(player, "left the game"));
+                case 2 -> events.playerDeath(new PlayerDeathEvent(player, List.of(), 0, player.getName() + " 被苦力怕炸死了"));
+                default -> events.playerChat(new AsyncPlayerChatEvent(true, player, "第 " + fired + " 条消息，Hello world", Set.of()));
+            }
+            fired++;
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+        }
+        return fired;
+    }
+
+    // 测量阶段开始与结束时的计数，堆分配量为所有线程分配字节数之和
+    private record Sample(long nanos, long received, long requests, long responses, long broadcasts,
+                          long allocated, long gcCount, long gcMillis) {
+        static Sample take(LoopbackBot bot, LongAdder broadcasts) {
+            long gcCount = 0;
+            long gcMillis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcMillis += Math.max(0, gc.getCollectionTime());
+            }
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            return new Sample(System.nanoTime(), bot.received.sum(), bot.requests.sum(), bot.responses.sum(), broadcasts.sum(),
+                    threads.getTotalThreadAllocatedBytes(), gcCount, gcMillis);
+        }
+    }
+
+    private void report(long fired, Sample before, Sample after, LoopbackBot bot) {
+        double seconds = (after.nanos() - before.nanos()) / 1e9;
+        long delivered = after.received() - before.received();
+        long allocated = after.allocated() - before.allocated();
+        System.out.printf(Locale.ROOT, "事件：触发 %.0f/秒，机器人收到 %.0f/秒，成功 %d，失败 %d%n",
+                fired / seconds, delivered / seconds, this.succeeded.sum(), this.failed.sum());
+        System.out.printf(Locale.ROOT, "事件延迟：p50 %s，p99 %s，最大 %s%n", millis(this.eventLatency.quantile(0.5)),
+                millis(this.eventLatency.quantile(0.99)), millis(this.eventLatency.max()));
+        System.out.printf(Locale.ROOT, "机器人请求：发送 %.0f/秒，响应 %.0f/秒，广播 %.0f/秒，响应延迟 p50 %s，p99 %s%n",
+                (after.requests() - before.requests()) / seconds, (after.responses() - before.responses()) / seconds,
+                (after.broadcasts() - before.broadcasts()) / seconds,
+                millis(bot.requestLatency().quantile(0.5)), millis(bot.requestLatency().quantile(0.99)));
+        System.out.printf(Locale.ROOT, "堆分配：%.1f MiB/秒，每个事件 %.0f 字节，GC %d 次共 %d 毫秒%n",
+                allocated / seconds / (1024 * 1024), fired == 0 ? 0.0 : (double) allocated / fired,
+                after.gcCount() - before.gcCount(), after.gcMillis() - before.gcMillis());
+        if (bot.rejected.sum() > 0) System.out.println("机器人拒绝了 " + bot.rejected.sum() + " 次握手（token 错误）");
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f ms", nanos / 1_000_000.0);
+    }
+
+    // 在线玩家、主线程调度器、控制台与广播都由代理模拟；命令只回复一行在线人数
+    private Plugin plugin(int playerCount) {
+        World world = Fixtures.proxy(World.class, (method, args) -> method.equals("getName") ? "world" : null);
+        for (int i = 0; i < Math.max(1, playerCount); i++) {
+            UUID uuid = UUID.randomUUID();
+            String name = "Player" + i;
+            this.players.add(Fixtures.proxy(Player.class, (method, args) -> switch (method) {
+                case "getUniqueId" -> uuid;
+                case "getName", "getDisplayName" -> name;
+                case "getWorld" -> world;
+                default -> null;
+            }));
+        }
+        Plugin[] plugin = new Plugin[1];
+        BukkitScheduler scheduler = Fixtures.proxy(BukkitScheduler.class, (method, args) -> switch (method) {
+            case "runTask" -> this.schedule(this.mainThread, (Runnable) args[1], 0, 0);
+            case "runTaskAsynchronously" -> this.schedule(this.asyncPool, (Runnable) args[1], 0, 0);
+            case "runTaskLater" -> this.schedule(this.mainThread, (Runnable) args[1], (long) args[2], 0);
+            case "runTaskTimer" -> this.schedule(this.mainThread, (Runnable) args[1], (long) args[2], (long) args[3]);
+            case "runTaskTimerAsynchronously" -> this.schedule(this.asyncPool, (Runnable) args[1], (long) args[2], (long) args[3]);
+            default -> null;
+        });
+        ConsoleCommandSender console = Fixtures.proxy(ConsoleCommandSender.class, (method, args) -> method.equals("getName") ? "CONSOLE" : null);
+        Server server = Fixtures.proxy(Server.class, (method, args) -> switch (method) {
+            case "getScheduler" -> scheduler;
+            case "getLogger" -> plugin[0].getLogger();
+            case "getOnlinePlayers" -> List.copyOf(this.players);
+            case "getWorlds" -> List.of();
+            case "isPrimaryThread" -> Thread.currentThread() == this.primaryThread;
+            case "getConsoleSender" -> console;
+            case "dispatchCommand" -> {
+                ((CommandSender) args[0]).sendMessage("There are " + this.players.size() + " players online");
+                yield true;
+            }
+            case "broadcastMessage" -> {
+                this.broadcasts.increment();
+                yield this.players.size();
+            }
+            default -> null;
+        });
+        Plugin base = Fixtures.plugin();
+        plugin[0] = Fixtures.proxy(Plugin.class, (method, args) -> switch (method) {
+            case "getServer" -> server;
+            case "getLogger" -> base.getLogger();
+            case "getDataFolder" -> base.getDataFolder();
+            case "getName" -> "QQBot";
+            case "isEnabled" -> true;
+            default -> null;
+        });
+        return plugin[0];
+    }
+
+    // 按 tick（50 毫秒）换算的延迟与周期；周期为 0 时只执行一次
+    private BukkitTask schedule(ScheduledExecutorService executor, Runnable task, long delay, long period) {
+        ScheduledFuture<?> future = period > 0
+                ? executor.scheduleAtFixedRate(task, delay * 50, period * 50, TimeUnit.MILLISECONDS)
+                : executor.schedule(task, delay * 50, TimeUnit.MILLISECONDS);
+        return Fixtures.proxy(BukkitTask.class, (method, args) -> {
+            if (method.equals("cancel")) future.cancel(false);
+            if (method.equals("isCancelled")) return future.isCancelled();
+            return null;
+        });
+    }
+}
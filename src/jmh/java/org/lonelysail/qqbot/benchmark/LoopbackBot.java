@@ -0,0 +1,268 @@
+package org.lonelysail.qqbot.benchmark;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.extensions.DefaultExtension;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
+import org.java_websocket.server.WebSocketServer;
+import org.lonelysail.qqbot.Utils;
+import org.lonelysail.qqbot.metrics.LatencyHistogram;
+import org.lonelysail.qqbot.metrics.Metrics;
+import org.lonelysail.qqbot.websocket.MeteredDeflateExtension;
+import org.lonelysail.qqbot.websocket.WsSender;
+import org.lonelysail.qqbot.websocket.codec.BroadcastMessage;
+import org.lonelysail.qqbot.websocket.codec.Codec;
+import org.lonelysail.qqbot.websocket.codec.Codecs;
+import org.lonelysail.qqbot.websocket.codec.Envelope;
+import org.lonelysail.qqbot.websocket.codec.EventMessage;
+import org.lonelysail.qqbot.websocket.codec.ResponseMessage;
+import org.lonelysail.qqbot.websocket.codec.TextColor;
+import org.lonelysail.qqbot.websocket.codec.WireMessage;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// 同一进程内代替机器人的 WebSocket 服务器：检查 info 请求头中的 token，同意插件提出的消息格式（base64 或 json），
+// 并对 websocket/bot 上收到的每个事件（包括 batch 帧中的）回复成功，player_chat 按协议不回复。可以注入回复延迟、失败与丢失，
+// 也可以按速率向 websocket/minecraft 发送 message、command、player_list 请求并统计插件的响应延迟
+public class LoopbackBot extends WebSocketServer {
+    public static final String TOKEN = "benchmark";
+    // 机器人发出的广播消息
+    private static final List<BroadcastMessage.Section> BROADCAST = List.of(
+            new BroadcastMessage.Section(TextColor.GOLD, "[QQ] "),
+            new BroadcastMessage.Section(TextColor.AQUA, "Steve"),
+            new BroadcastMessage.Section(TextColor.WHITE, "：大家好"));
+
+    // 收到的事件数
+    public final LongAdder received = new LongAdder();
+    // 因 token 错误被拒绝的握手
+    public final LongAdder rejected = new LongAdder();
+    // 发给插件的请求数、收到的响应数与响应延迟（不含没有响应的广播消息）
+    public final LongAdder requests = new LongAdder();
+    public final LongAdder responses = new LongAdder();
+    private volatile LatencyHistogram requestLatency = new LatencyHistogram();
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final ScheduledExecutorService nudger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LoopbackBot-Nudger");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 延迟回复与请求流量
+    private final ScheduledExecutorService timer = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "LoopbackBot-Timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Utils utils = new Utils();
+    private final Map<Long, Long> outstanding = new ConcurrentHashMap<>();
+    private final AtomicLong requestId = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile double failureRate;
+    private volatile double dropRate;
+
+    // 一个连接的消息格式，以及它接收事件还是请求；单连接模式两者都有，请求带 minecraft 频道
+    private record Session(Codec codec, boolean events, boolean requests, String requestChannel) {
+    }
+
+    private LoopbackBot(List<Draft> drafts) {
+        super(new InetSocketAddress("127.0.0.1", 0), drafts);
+        this.setReuseAddr(true);
+    }
+
+    public static LoopbackBot launch() {
+        return launch(false);
+    }
+
+    // 启动并等待端口绑定完成；deflate 为 true 时同意 permessage-deflate，回复也会压缩
+    public static LoopbackBot launch(boolean deflate) {
+        // 机器人一方告知 server_no_context_takeover，因此每条消息后重置压缩器
+        IExtension extension = deflate ? new MeteredDeflateExtension(0, 6, false, new Metrics()) : new DefaultExtension();
+        LoopbackBot bot = new LoopbackBot(List.of(new Draft_6455(extension)));
+        bot.start();
+        try {
+            if (!bot.started.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("机器人未能启动");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        // Java-WebSocket 的服务器在 worker 线程发送时可能丢失写事件：selector 线程写完上一帧后把 interestOps 改回 OP_READ，
+        // 覆盖了 worker 刚设置的 OP_WRITE，这一帧就会一直留在队列里。定期为仍有待写数据的连接重新申请写事件
+        bot.nudger.scheduleAtFixedRate(bot::nudge, 1, 1, TimeUnit.MILLISECONDS);
+        return bot;
+    }
+
+    private void nudge() {
+        for (WebSocket conn : this.getConnections()) {
+            if (conn.hasBufferedData()) this.onWriteDemand(conn);
+        }
+    }
+
+    // 每个回复延迟 latencyMillis 毫秒；failureRate 比例的事件回复失败，dropRate 比例的事件不回复（插件一方超时）
+    public LoopbackBot faults(long latencyMillis, double failureRate, double dropRate) {
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+        this.dropRate = dropRate;
+        return this;
+    }
+
+    // 以每秒 perSecond 次的速率向每个接收请求的连接发送 type 请求：message（广播）、command、player_list 等
+    public LoopbackBot traffic(String type, double perSecond) {
+        double perTick = perSecond / 1000;
+        double[] credit = {0};
+        this.timer.scheduleAtFixedRate(() -> {
+            credit[0] += perTick;
+            for (; credit[0] >= 1; credit[0]--) this.request(type);
+        }, 1, 1, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public LatencyHistogram requestLatency() {
+        return this.requestLatency;
+    }
+
+    // 从现在开始重新统计响应延迟，例如预热结束时
+    public void resetRequestLatency() {
+        this.requestLatency = new LatencyHistogram();
+    }
+
+    private void request(String type) {
+        for (WebSocket conn : this.getConnections()) {
+            Session session = conn.getAttachment();
+            if (session == null || !session.requests() || !conn.isOpen()) continue;
+            WireMessage message;
+            if ("message".equals(type)) {
+                message = new BroadcastMessage(0, BROADCAST);
+            } else {
+                long id = this.requestId.incrementAndGet();
+                message = new EventMessage(id, type, "command".equals(type) ? "list" : "");
+                this.outstanding.put(id, System.nanoTime());
+            }
+            this.requests.increment();
+            session.codec().send(conn, session.requestChannel(), message);
+        }
+    }
+
+    public URI uri() {
+        return URI.create("ws://127.0.0.1:" + this.getPort() + "/");
+    }
+
+    public void shutdown() {
+        this.nudger.shutdownNow();
+        this.timer.shutdownNow();
+        try {
+            this.stop(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public ServerHandshakeBuilder onWebsocketHandshakeReceivedAsServer(WebSocket conn, Draft draft, ClientHandshake request) throws InvalidDataException {
+        ServerHandshakeBuilder response = super.onWebsocketHandshakeReceivedAsServer(conn, draft, request);
+        // 与真正的机器人一样，只接受 info 中 token 正确的连接
+        Object token = null;
+        try {
+            token = this.utils.decode(request.getFieldValue("info")).get("token");
+        } catch (RuntimeException ignored) {
+        }
+        if (!TOKEN.equals(token)) {
+            this.rejected.increment();
+            throw new InvalidDataException(CloseFrame.POLICY_VALIDATION, "token 错误");
+        }
+        // 同意插件提出的消息格式
+        if (request.hasFieldValue(Codecs.HEADER)) response.put(Codecs.HEADER, request.getFieldValue(Codecs.HEADER));
+        return response;
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        Codec codec = Codecs.negotiated(handshake.getFieldValue(Codecs.HEADER));
+        String path = handshake.getResourceDescriptor();
+        if (path.endsWith("websocket/bot")) conn.setAttachment(new Session(codec, true, false, null));
+        else if (path.endsWith("websocket/minecraft")) conn.setAttachment(new Session(codec, false, true, null));
+        else conn.setAttachment(new Session(codec, true, true, WsSender.MINECRAFT_CHANNEL));
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        try {
+            this.answer(conn, conn.<Session>getAttachment().codec().read(message));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        try {
+            this.answer(conn, conn.<Session>getAttachment().codec().read(message));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void answer(WebSocket conn, Envelope envelope) {
+        if (envelope.message() instanceof ResponseMessage response) {
+            Long sentAt = this.outstanding.remove(response.id());
+            if (sentAt != null) this.requestLatency.record(System.nanoTime() - sentAt);
+            this.responses.increment();
+            return;
+        }
+        if (!(envelope.message() instanceof EventMessage event)) return;
+        Codec codec = conn.<Session>getAttachment().codec();
+        if ("batch".equals(event.type()) && event.data() instanceof List<?> events) {
+            for (Object item : events) {
+                if (item instanceof Map<?, ?> map && map.get("id") instanceof Number id) {
+                    this.reply(conn, codec, envelope.channel(), String.valueOf(map.get("type")), id.longValue());
+                }
+            }
+            return;
+        }
+        this.reply(conn, codec, envelope.channel(), event.type(), event.id());
+    }
+
+    private void reply(WebSocket conn, Codec codec, String channel, String type, long id) {
+        this.received.increment();
+        // 聊天消息不需要确认，不回复的机器人才能让不带 id 的回复对上插件最早的请求
+        if ("player_chat".equals(type)) return;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (this.dropRate > 0 && random.nextDouble() < this.dropRate) return;
+        ResponseMessage response = new ResponseMessage(id, this.failureRate <= 0 || random.nextDouble() >= this.failureRate, null);
+        long latency = this.latencyMillis;
+        if (latency <= 0) codec.send(conn, channel, response);
+        else this.timer.schedule(() -> codec.send(conn, channel, response), latency, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        if (conn == null) this.started.countDown();
+    }
+
+    @Override
+    public void onStart() {
+        this.started.countDown();
+    }
+}
@@ -0,0 +1,84 @@
+package org.lonelysail.qqbot.benchmark;
+
+import org.bukkit.plugin.Plugin;
+import org.lonelysail.qqbot.metrics.Metrics;
+import org.lonelysail.qqbot.websocket.ConnectionSupervisor;
+import org.lonelysail.qqbot.websocket.Endpoint;
+import org.lonelysail.qqbot.websocket.WsSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 通过本机回环连接到 LoopbackBot 的端到端发送：等待响应的往返延迟，以及多个线程同时发送时的吞吐量
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendBenchmark {
+    @Param({"json", "base64"})
+    public String codec;
+
+    private LoopbackBot bot;
+    private ConnectionSupervisor supervisor;
+    private WsSender sender;
+    // 等待响应的事件用 player_death 发送：player_chat 按协议不回复
+    private final List<String> death = List.of("Steve", "Steve 被苦力怕炸死了");
+    private final List<String> chat = List.of("Steve", "你好，世界！Hello world");
+
+    @Setup
+    public void setup() throws InterruptedException {
+        this.bot = LoopbackBot.launch();
+        Plugin plugin = Fixtures.plugin();
+        var config = Fixtures.config(this.bot.uri(), this.codec);
+        this.supervisor = new ConnectionSupervisor(plugin.getLogger(), config);
+        this.sender = new WsSender(plugin, config, Endpoint.load(config).get(0), this.supervisor, new Metrics());
+        this.sender.getLink().start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!this.sender.isConnected()) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("无法连接到 LoopbackBot");
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.supervisor.shutdown();
+        this.sender.shutdown();
+        this.bot.shutdown();
+    }
+
+    // 单个发送方等待机器人响应
+    @Benchmark
+    public boolean roundTrip() {
+        return this.sender.sendData("player_death", this.death, true);
+    }
+
+    // 多个发送方同时等待响应，事件会在发送队列中合并为 batch 帧
+    @Benchmark
+    @Threads(8)
+    public boolean roundTripConcurrent() {
+        return this.sender.sendData("player_death", this.death, true);
+    }
+
+    // 不等待响应，只等到事件写入连接
+    @Benchmark
+    @Threads(8)
+    public boolean fireAndForgetConcurrent() {
+        return this.sender.sendDataAsync("player_chat", this.chat, false).join();
+    }
+}
@@ -0,0 +1,80 @@
+package org.lonelysail.qqbot.websocket;
+
+import org.lonelysail.qqbot.benchmark.Fixtures;
+import org.lonelysail.qqbot.metrics.Metrics;
+import org.lonelysail.qqbot.server.BuiltinHandlers;
+import org.lonelysail.qqbot.server.MainThreadExecutor;
+import org.lonelysail.qqbot.server.SnapshotService;
+import org.lonelysail.qqbot.websocket.codec.Codecs;
+import org.lonelysail.qqbot.websocket.codec.EventMessage;
+import org.lonelysail.qqbot.websocket.codec.JsonWire;
+import org.lonelysail.qqbot.websocket.codec.ResponseMessage;
+import org.lonelysail.qqbot.websocket.rpc.RpcRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// 机器人请求在 WsListener 中的处理：解码、交给处理器、直到响应交还给发送方（不经过网络）
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    private ConnectionSupervisor supervisor;
+    private RpcRegistry rpc;
+    private WsListener listener;
+    private byte[] playerList;
+    private byte[] serverStatus;
+
+    @Setup
+    public void setup() {
+        var plugin = Fixtures.plugin();
+        var config = Fixtures.config(URI.create("ws://127.0.0.1:1/"), "json");
+        this.supervisor = new ConnectionSupervisor(plugin.getLogger(), config);
+        var metrics = new Metrics();
+        var mainThread = new MainThreadExecutor(plugin);
+        this.rpc = new RpcRegistry(plugin.getLogger(), mainThread, 4, metrics);
+        new BuiltinHandlers(plugin, config, mainThread, new SnapshotService(plugin, 40)).register(this.rpc);
+        this.listener = new WsListener(plugin, config, Endpoint.load(config).get(0), this.supervisor, this.rpc, mainThread, metrics);
+        this.playerList = JsonWire.toBytes(new EventMessage(1, "player_list", ""));
+        this.serverStatus = JsonWire.toBytes(new EventMessage(2, "server_status", ""));
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.rpc.shutdown();
+        this.supervisor.shutdown();
+    }
+
+    private ResponseMessage dispatch(byte[] frame) throws IOException {
+        CompletableFuture<ResponseMessage> response = new CompletableFuture<>();
+        this.listener.handle(Codecs.JSON.decode(ByteBuffer.wrap(frame)), response::complete);
+        return response.join();
+    }
+
+    @Benchmark
+    public ResponseMessage playerList() throws IOException {
+        return this.dispatch(this.playerList);
+    }
+
+    @Benchmark
+    public ResponseMessage serverStatus() throws IOException {
+        return this.dispatch(this.serverStatus);
+    }
+}
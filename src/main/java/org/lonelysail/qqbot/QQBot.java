@@ -2,19 +2,50 @@ package org.lonelysail.qqbot;
 
 import org.bukkit.Bukkit;
 import org.bukkit.configuration.Configuration;
+import org.bukkit.event.HandlerList;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.java_websocket.framing.CloseFrame;
+import org.lonelysail.qqbot.metrics.Metrics;
+import org.lonelysail.qqbot.metrics.MetricsBean;
+import org.lonelysail.qqbot.metrics.PrometheusEndpoint;
+import org.lonelysail.qqbot.server.BuiltinHandlers;
+import org.lonelysail.qqbot.server.ChatLimiter;
+import org.lonelysail.qqbot.server.EventFilter;
 import org.lonelysail.qqbot.server.EventListener;
+import org.lonelysail.qqbot.server.MainThreadExecutor;
+import org.lonelysail.qqbot.server.SnapshotService;
 import org.lonelysail.qqbot.server.commands.QQCommand;
+import org.lonelysail.qqbot.websocket.ConnectionSupervisor;
+import org.lonelysail.qqbot.websocket.Endpoint;
+import org.lonelysail.qqbot.websocket.EventRelay;
 import org.lonelysail.qqbot.websocket.WsListener;
 import org.lonelysail.qqbot.websocket.WsSender;
+import org.lonelysail.qqbot.websocket.rpc.RpcRegistry;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public final class QQBot extends JavaPlugin {
     public Configuration config;
 
-    private WsListener websocketListener;
-    private WsSender websocketSender;
+    // 每个机器人连接一对 WsSender 与 WsListener
+    // 连接在异步任务中建立，关闭时可能在另一个线程中读取
+    private final List<WsListener> websocketListeners = new CopyOnWriteArrayList<>();
+    private final List<WsSender> websocketSenders = new CopyOnWriteArrayList<>();
+    private volatile EventRelay relay;
+    private volatile RpcRegistry rpc;
+    private volatile ConnectionSupervisor supervisor;
+    private SnapshotService snapshots;
+    private MainThreadExecutor mainThread;
+    private final Metrics metrics = new Metrics();
+    private MetricsBean metricsBean;
+    private PrometheusEndpoint prometheus;
 
     // 插件加载时调用的方法，初始化配置文件
     @Override
@@ -24,48 +55,147 @@ public final class QQBot extends JavaPlugin {
     }
 
     // 插件启用时调用的方法，初始化并启动各种服务
+    // 这里不做任何网络等待：监听器和命令立即注册，连接完成前的事件暂存在各个 WsSender 的就绪闸门中
 @Override
 public void onEnable() {
     this.getLogger().info("正在初始化与机器人的连接……");
+    // 每个机器人的发件箱与统计项都以 id 区分，配置有误时不启动任何连接
+    List<Endpoint> endpoints;
+    try {
+        endpoints = Endpoint.load(this.config);
+    } catch (IllegalArgumentException e) {
+        this.getLogger().severe("机器人连接配置有误，插件已停用：" + e.getMessage());
+        this.getServer().getPluginManager().disablePlugin(this);
+        return;
+    }
 
-    // 使用异步任务来初始化 WebSocket 连接
-    Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
-        // WebSocket 连接初始化
-        websocketSender = new WsSender(this, this.config);
-        websocketListener = new WsListener(this, this.config);
-
-        // 异步连接 WebSocket
-        websocketSender.connect(); 
-        websocketListener.connect(); 
-
-        // 等待 WebSocket 连接完成后再执行主线程任务
-        Bukkit.getScheduler().runTask(this, () -> {
-            // 注册事件监听器和命令执行器
-            EventListener eventListener = new EventListener(websocketSender);
-            QQCommand command = new QQCommand(websocketSender, this.config.getString("name"));
-            Objects.requireNonNull(this.getCommand("qq")).setExecutor(command);
-            this.getServer().getPluginManager().registerEvents(eventListener, this);
-
-            // 延迟发送服务器启动信息
-            Bukkit.getScheduler().runTaskLater(this, () -> {
-                websocketSender.sendServerStartup();
-            }, 20L); // 延迟20 ticks后执行
-        });
+    // 连接与重连都由 supervisor 在自己的线程中完成，每个连接一个线程，握手并行进行
+    supervisor = new ConnectionSupervisor(this.getLogger(), this.config);
+    supervisor.addListener((name, from, to) -> {
+        if (to == ConnectionSupervisor.State.CONNECTING || to == ConnectionSupervisor.State.HALF_OPEN) metrics.connectAttempts.increment();
+        if (from == ConnectionSupervisor.State.CONNECTED) metrics.disconnects.increment();
     });
+    startMetrics();
+    snapshots = new SnapshotService(this, this.config.getLong("snapshot.interval", 40));
+    snapshots.start();
+    // 所有机器人的请求共用一个处理器注册表，其他插件可以通过 ServicesManager 获取并注册自己的请求处理器
+    mainThread = new MainThreadExecutor(this);
+    rpc = new RpcRegistry(this.getLogger(), mainThread, this.config.getInt("rpc.concurrency", 4), metrics);
+    new BuiltinHandlers(this, this.config, mainThread, snapshots).register(rpc);
+    this.getServer().getServicesManager().register(RpcRegistry.class, rpc, this, ServicePriority.Normal);
+
+    // 配置了 endpoints 列表时为每个机器人建立各自的连接、发送队列和发件箱
+    for (Endpoint endpoint : endpoints) {
+        WsSender websocketSender = new WsSender(this, this.config, endpoint, supervisor, metrics);
+        WsListener websocketListener = new WsListener(this, this.config, endpoint, supervisor, rpc, mainThread, metrics);
+        // 单连接模式下机器人的请求也通过 websocketSender 的连接转交给 websocketListener
+        if (WsSender.isMultiplexed(this.config)) websocketSender.attachListener(websocketListener);
+        websocketSenders.add(websocketSender);
+        websocketListeners.add(websocketListener);
+    }
+    relay = new EventRelay(endpoints, websocketSenders);
+    if (endpoints.size() > 1) this.getLogger().info("已配置 " + endpoints.size() + " 个机器人连接。");
+    // 每个连接第一次建立时立即发送服务器启动信息，排在等待中的事件之前
+    relay.sendServerStartupOnOpen();
+
+    // 注册事件监听器和命令执行器
+    // 聊天限流需要在 config.yml 中开启，默认所有聊天消息照常转发
+    ChatLimiter chatLimiter = this.config.getBoolean("chat_limit.enabled", false) ? new ChatLimiter(this.config) : null;
+    EventListener eventListener = new EventListener(relay, chatLimiter, this.loadFilter());
+    // 定期发送被限流合并的聊天摘要
+    long digestTicks = Math.max(1, this.config.getLong("chat_limit.digest_interval", 5000) / 50);
+    Bukkit.getScheduler().runTaskTimerAsynchronously(this, eventListener::flushChatDigests, digestTicks, digestTicks);
+    QQCommand command = new QQCommand(this, relay, eventListener, this.config.getString("name"), metrics);
+    Objects.requireNonNull(this.getCommand("qq")).setExecutor(command);
+    this.getServer().getPluginManager().registerEvents(eventListener, this);
+
+    // 最后开始连接，start 只是把连接任务交给 supervisor 的线程
+    for (int i = 0; i < websocketSenders.size(); i++) {
+        websocketSenders.get(i).getLink().start();
+        if (!WsSender.isMultiplexed(this.config)) websocketListeners.get(i).getLink().start();
+    }
 }
 
-    // 插件禁用时调用的方法，关闭各种服务
+    // 编译 filters 规则；配置有误时不过滤任何事件，修改后可以用 /qq reload 重新加载
+    private EventFilter loadFilter() {
+        try {
+            EventFilter filter = EventFilter.compile(this.config);
+            if (filter.size() > 0) this.getLogger().info("已加载 " + filter.size() + " 条事件过滤规则。");
+            return filter;
+        } catch (IllegalArgumentException e) {
+            this.getLogger().warning("事件过滤规则有误，暂不过滤事件：" + e.getMessage());
+            return EventFilter.ALLOW_ALL;
+        }
+    }
+
+    // 运行统计：始终通过 JMX 提供，按配置在本机开启 Prometheus 接口
+    private void startMetrics() {
+        metricsBean = new MetricsBean(metrics);
+        metricsBean.register(this.getLogger());
+        if (!this.config.getBoolean("metrics.prometheus.enabled", false)) return;
+        String host = this.config.getString("metrics.prometheus.host", "127.0.0.1");
+        int port = this.config.getInt("metrics.prometheus.port", 9464);
+        try {
+            prometheus = new PrometheusEndpoint(metrics, host, port);
+            prometheus.start();
+            this.getLogger().info("Prometheus 监控接口已在 http://" + host + ":" + port + "/metrics 开启。");
+        } catch (IOException e) {
+            this.getLogger().warning("无法开启 Prometheus 监控接口：" + e.getMessage());
+        }
+    }
+
+    // 插件禁用时调用的方法，按顺序关闭各种服务。整个过程最多持续 shutdown.timeout 毫秒：
+    // 停止接收新事件，发送关闭通知并把队列中的事件发完，关闭连接，最后等待插件自己的线程全部退出
 @Override
 public void onDisable() {
-    // 在异步线程中执行 WebSocket 的关闭操作，避免阻塞主线程
-    Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
-        // 发送服务器关闭信号
-        websocketSender.sendServerShutdown();
-        websocketSender.close();
-            
-        // 停止 WebSocket 监听
-        websocketListener.serverRunning = false;
-        websocketListener.close();
-    });
-  }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, this.config.getLong("shutdown.timeout", 5000)));
+    // 停止接收新事件：取消快照与聊天摘要等定时任务，事件监听器不再转发
+    if (snapshots != null) snapshots.stop();
+    Bukkit.getScheduler().cancelTasks(this);
+    if (mainThread != null) mainThread.stop();
+    HandlerList.unregisterAll(this);
+    if (relay != null) relay.close();
+
+    // 调度器在禁用期间已经不可用，关闭流程在专用线程中同步完成，主线程等待它结束或超时
+    Thread shutdown = new Thread(() -> this.shutdownConnections(deadline), "QQBot-Shutdown");
+    shutdown.start();
+    try {
+        shutdown.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+    } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+    }
+    if (shutdown.isAlive()) {
+        this.getLogger().warning("关闭流程超时，强制断开与机器人的连接。");
+        shutdown.interrupt();
+        for (WsSender websocketSender : websocketSenders) websocketSender.closeConnection(CloseFrame.GOING_AWAY, "服务器关闭");
+        for (WsListener websocketListener : websocketListeners) websocketListener.closeConnection(CloseFrame.GOING_AWAY, "服务器关闭");
+    }
+
+    if (prometheus != null) prometheus.stop();
+    if (metricsBean != null) metricsBean.unregister();
+    this.getServer().getServicesManager().unregisterAll(this);
+}
+
+    // 在 QQBot-Shutdown 线程中执行，所有等待都不超过 deadline
+    private void shutdownConnections(long deadline) {
+        try {
+            // 关闭通知排在已有事件之后，收到响应时之前的事件也已经发出
+            if (relay != null) {
+                long noticeTimeout = Math.min(deadline - System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(this.config.getLong("shutdown.notice_timeout", 2000)));
+                try {
+                    relay.sendServerShutdownAsync().get(Math.max(0, noticeTimeout), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException | TimeoutException e) {
+                    this.getLogger().warning("发送服务器关闭消息超时！");
+                }
+            }
+            // 之后不再重连
+            if (supervisor != null) supervisor.shutdown(deadline);
+            // 发完队列中剩余的事件后关闭连接，未发出的持久事件留在发件箱中，下次启动时补发
+            for (WsSender websocketSender : websocketSenders) websocketSender.shutdown(deadline);
+            for (WsListener websocketListener : websocketListeners) websocketListener.shutdown(deadline);
+            if (rpc != null) rpc.shutdown(deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -1,9 +1,10 @@
 package org.lonelysail.qqbot;
 
 import com.google.gson.Gson;
-import com.google.gson.internal.LinkedTreeMap;
 import com.google.gson.reflect.TypeToken;
 import org.bukkit.ChatColor;
+import org.lonelysail.qqbot.websocket.codec.BroadcastMessage;
+import org.lonelysail.qqbot.websocket.codec.TextColor;
 
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
@@ -12,31 +13,19 @@ import java.util.HashMap;
 import java.util.List;
 
 public class Utils {
-    private final HashMap<String, ChatColor> mapping = new HashMap<>();
+    // 按 TextColor 的顺序预先算好的颜色代码
+    private static final String[] COLORS = new String[TextColor.values().length];
+
+    static {
+        for (TextColor color : TextColor.values()) COLORS[color.ordinal()] = ChatColor.valueOf(color.name()).toString();
+    }
 
     private final Gson gson = new Gson();
     private final Base64.Decoder decoder = Base64.getDecoder();
     private final Base64.Encoder encoder = Base64.getEncoder();
     private final Type type = new TypeToken<HashMap<String, Object>>() {}.getType();
 
-    public Utils() {
-        this.mapping.put("black", ChatColor.BLACK);
-        this.mapping.put("dark_blue", ChatColor.DARK_BLUE);
-        this.mapping.put("dark_green", ChatColor.DARK_GREEN);
-        this.mapping.put("dark_aqua", ChatColor.DARK_AQUA);
-        this.mapping.put("dark_red", ChatColor.DARK_RED);
-        this.mapping.put("dark_purple", ChatColor.DARK_PURPLE);
-        this.mapping.put("gold", ChatColor.GOLD);
-        this.mapping.put("gray", ChatColor.GRAY);
-        this.mapping.put("dark_gray", ChatColor.DARK_GRAY);
-        this.mapping.put("blue", ChatColor.BLUE);
-        this.mapping.put("green", ChatColor.GREEN);
-        this.mapping.put("aqua", ChatColor.AQUA);
-        this.mapping.put("red", ChatColor.RED);
-        this.mapping.put("light_purple", ChatColor.LIGHT_PURPLE);
-        this.mapping.put("yellow", ChatColor.YELLOW);
-        this.mapping.put("white", ChatColor.WHITE);
-    }
+    private final ThreadLocal<StringBuilder> builder = ThreadLocal.withInitial(() -> new StringBuilder(256));
 
     public String encode(HashMap<String, ?> originalMap) {
         String string = this.gson.toJson(originalMap);
@@ -50,10 +39,11 @@ public class Utils {
         return this.gson.fromJson(decodeString, this.type);
     }
 
-    public String toStringMessage(List<LinkedTreeMap<String, String>> original) {
-        StringBuilder message = new StringBuilder();
-        for (LinkedTreeMap<String, String> section : original) {
-            message.append(this.mapping.getOrDefault(section.get("color"), ChatColor.GRAY)).append(section.get("text"));
+    public String toStringMessage(List<BroadcastMessage.Section> original) {
+        StringBuilder message = this.builder.get();
+        message.setLength(0);
+        for (BroadcastMessage.Section section : original) {
+            message.append(COLORS[section.color().ordinal()]).append(section.text());
         }
         return message.toString();
     }
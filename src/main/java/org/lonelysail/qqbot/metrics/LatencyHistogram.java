@@ -0,0 +1,74 @@
+package org.lonelysail.qqbot.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free log-linear histogram of durations in nanoseconds, in the spirit of HdrHistogram.
+// Every power of two is split into 8 linear sub-buckets, so a recorded value is reported within 12.5%.
+// Recording is a few atomic increments with no allocation and no locks; reads are weakly consistent.
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    private static int index(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    // Largest value that falls into the bucket
+    private static long upperBound(int index) {
+        if (index < SUB_COUNT) return index;
+        int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        long sub = index % SUB_COUNT;
+        return ((SUB_COUNT + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(index(value));
+        this.total.incrementAndGet();
+        this.sum.addAndGet(value);
+        long current;
+        while (value > (current = this.max.get()) && !this.max.compareAndSet(current, value)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public long count() {
+        return this.total.get();
+    }
+
+    public long sum() {
+        return this.sum.get();
+    }
+
+    public long max() {
+        return this.max.get();
+    }
+
+    public double mean() {
+        long count = this.total.get();
+        return count == 0 ? 0 : (double) this.sum.get() / count;
+    }
+
+    // Upper bound of the bucket holding the given quantile (0..1); 0 when nothing was recorded
+    public long quantile(double quantile) {
+        long count = this.total.get();
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), this.max.get());
+        }
+        return this.max.get();
+    }
+}
@@ -0,0 +1,79 @@
+package org.lonelysail.qqbot.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Counters and latency histograms shared by the sender, the listener and the RPC handlers.
+// Recording only touches LongAdders and LatencyHistograms; per-type histograms are created the first time a type
+// is seen and looked up without allocating afterwards.
+public final class Metrics {
+    public final LongAdder framesOut = new LongAdder();
+    public final LongAdder bytesOut = new LongAdder();
+    public final LongAdder framesIn = new LongAdder();
+    public final LongAdder bytesIn = new LongAdder();
+    public final LongAdder timeouts = new LongAdder();
+    public final LongAdder connectAttempts = new LongAdder();
+    public final LongAdder disconnects = new LongAdder();
+    // permessage-deflate: bytes before and after compression, and messages left uncompressed by the threshold
+    public final LongAdder deflateBytesIn = new LongAdder();
+    public final LongAdder deflateBytesOut = new LongAdder();
+    public final LongAdder deflateSkipped = new LongAdder();
+    public final LongAdder inflateBytesIn = new LongAdder();
+    public final LongAdder inflateBytesOut = new LongAdder();
+    // Heartbeat pings left unanswered, and connections closed because too many were in a row
+    public final LongAdder heartbeatMisses = new LongAdder();
+    public final LongAdder heartbeatTimeouts = new LongAdder();
+
+    public final LatencyHistogram encodeTime = new LatencyHistogram();
+    public final LatencyHistogram decodeTime = new LatencyHistogram();
+    public final LatencyHistogram deflateTime = new LatencyHistogram();
+    public final LatencyHistogram inflateTime = new LatencyHistogram();
+    public final LatencyHistogram heartbeatRtt = new LatencyHistogram();
+
+    private final Map<String, LatencyHistogram> roundTrip = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> handlerTime = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private static LatencyHistogram histogram(Map<String, LatencyHistogram> histograms, String type) {
+        LatencyHistogram histogram = histograms.get(type);
+        return histogram != null ? histogram : histograms.computeIfAbsent(type, key -> new LatencyHistogram());
+    }
+
+    // From queueing an event to the bot's response, by event type
+    public LatencyHistogram roundTrip(String type) {
+        return histogram(this.roundTrip, type);
+    }
+
+    // Time spent in an RPC handler, by request type
+    public LatencyHistogram handlerTime(String type) {
+        return histogram(this.handlerTime, type);
+    }
+
+    // Compressed size over original size of everything deflated so far; 1 when nothing was compressed
+    public double compressionRatio() {
+        long in = this.deflateBytesIn.sum();
+        return in == 0 ? 1 : (double) this.deflateBytesOut.sum() / in;
+    }
+
+    // A value read when the metrics are reported, e.g. a queue depth
+    public void gauge(String name, LongSupplier supplier) {
+        this.gauges.put(name, supplier);
+    }
+
+    public Map<String, LatencyHistogram> roundTrips() {
+        return new TreeMap<>(this.roundTrip);
+    }
+
+    public Map<String, LatencyHistogram> handlerTimes() {
+        return new TreeMap<>(this.handlerTime);
+    }
+
+    public Map<String, Long> gauges() {
+        Map<String, Long> values = new TreeMap<>();
+        this.gauges.forEach((name, supplier) -> values.put(name, supplier.getAsLong()));
+        return values;
+    }
+}
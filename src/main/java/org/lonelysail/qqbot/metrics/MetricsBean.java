@@ -0,0 +1,154 @@
+package org.lonelysail.qqbot.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+// JMX view of the metrics; every attribute is computed when it is read
+public class MetricsBean implements MetricsMXBean {
+    private static final String NAME = "org.lonelysail.qqbot:type=Metrics";
+
+    private final Metrics metrics;
+
+    public MetricsBean(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void register(Logger logger) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(NAME);
+            // A reload leaves the previous instance registered
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.warning("[Metrics] 无法注册 JMX 监控：" + e.getMessage());
+        }
+    }
+
+    public void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(NAME));
+        } catch (JMException ignored) {
+        }
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static Map<String, Double> quantiles(Map<String, LatencyHistogram> histograms, double quantile) {
+        Map<String, Double> values = new TreeMap<>();
+        histograms.forEach((type, histogram) -> values.put(type, millis(histogram.quantile(quantile))));
+        return values;
+    }
+
+    @Override
+    public long getFramesOut() {
+        return this.metrics.framesOut.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return this.metrics.bytesOut.sum();
+    }
+
+    @Override
+    public long getFramesIn() {
+        return this.metrics.framesIn.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return this.metrics.bytesIn.sum();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return this.metrics.timeouts.sum();
+    }
+
+    @Override
+    public long getConnectAttempts() {
+        return this.metrics.connectAttempts.sum();
+    }
+
+    @Override
+    public long getDisconnects() {
+        return this.metrics.disconnects.sum();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        return this.metrics.compressionRatio();
+    }
+
+    @Override
+    public long getDeflateBytesSaved() {
+        return this.metrics.deflateBytesIn.sum() - this.metrics.deflateBytesOut.sum();
+    }
+
+    @Override
+    public double getDeflateTotalMillis() {
+        return millis(this.metrics.deflateTime.sum());
+    }
+
+    @Override
+    public double getInflateTotalMillis() {
+        return millis(this.metrics.inflateTime.sum());
+    }
+
+    @Override
+    public long getHeartbeatMisses() {
+        return this.metrics.heartbeatMisses.sum();
+    }
+
+    @Override
+    public long getHeartbeatTimeouts() {
+        return this.metrics.heartbeatTimeouts.sum();
+    }
+
+    @Override
+    public double getHeartbeatRttP50Millis() {
+        return millis(this.metrics.heartbeatRtt.quantile(0.5));
+    }
+
+    @Override
+    public double getHeartbeatRttP99Millis() {
+        return millis(this.metrics.heartbeatRtt.quantile(0.99));
+    }
+
+    @Override
+    public double getEncodeP99Millis() {
+        return millis(this.metrics.encodeTime.quantile(0.99));
+    }
+
+    @Override
+    public double getDecodeP99Millis() {
+        return millis(this.metrics.decodeTime.quantile(0.99));
+    }
+
+    @Override
+    public Map<String, Double> getRoundTripP50Millis() {
+        return quantiles(this.metrics.roundTrips(), 0.5);
+    }
+
+    @Override
+    public Map<String, Double> getRoundTripP99Millis() {
+        return quantiles(this.metrics.roundTrips(), 0.99);
+    }
+
+    @Override
+    public Map<String, Double> getHandlerP99Millis() {
+        return quantiles(this.metrics.handlerTimes(), 0.99);
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        return this.metrics.gauges();
+    }
+}
@@ -0,0 +1,48 @@
+package org.lonelysail.qqbot.metrics;
+
+import java.util.Map;
+
+// Exposed over JMX as org.lonelysail.qqbot:type=Metrics; latencies are in milliseconds
+public interface MetricsMXBean {
+    long getFramesOut();
+
+    long getBytesOut();
+
+    long getFramesIn();
+
+    long getBytesIn();
+
+    long getTimeouts();
+
+    long getConnectAttempts();
+
+    long getDisconnects();
+
+    double getCompressionRatio();
+
+    long getDeflateBytesSaved();
+
+    double getDeflateTotalMillis();
+
+    double getInflateTotalMillis();
+
+    long getHeartbeatMisses();
+
+    long getHeartbeatTimeouts();
+
+    double getHeartbeatRttP50Millis();
+
+    double getHeartbeatRttP99Millis();
+
+    double getEncodeP99Millis();
+
+    double getDecodeP99Millis();
+
+    Map<String, Double> getRoundTripP50Millis();
+
+    Map<String, Double> getRoundTripP99Millis();
+
+    Map<String, Double> getHandlerP99Millis();
+
+    Map<String, Long> getGauges();
+}
@@ -0,0 +1,114 @@
+package org.lonelysail.qqbot.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Serves the metrics in the Prometheus text format on /metrics; meant to be bound to localhost
+public class PrometheusEndpoint {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final Metrics metrics;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "QQBot-Metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PrometheusEndpoint(Metrics metrics, String host, int port) throws IOException {
+        this.metrics = metrics;
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        this.server.createContext("/metrics", this::handle);
+        this.server.setExecutor(this.executor);
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+        try {
+            this.executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = this.render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    String render() {
+        StringBuilder out = new StringBuilder(4096);
+        counter(out, "qqbot_frames_out_total", "Frames sent to the bot", this.metrics.framesOut.sum());
+        counter(out, "qqbot_bytes_out_total", "Payload bytes sent to the bot", this.metrics.bytesOut.sum());
+        counter(out, "qqbot_frames_in_total", "Frames received from the bot", this.metrics.framesIn.sum());
+        counter(out, "qqbot_bytes_in_total", "Payload bytes received from the bot", this.metrics.bytesIn.sum());
+        counter(out, "qqbot_timeouts_total", "Requests that got no response in time", this.metrics.timeouts.sum());
+        counter(out, "qqbot_connect_attempts_total", "Connection attempts, including reconnects", this.metrics.connectAttempts.sum());
+        counter(out, "qqbot_disconnects_total", "Established connections that were lost", this.metrics.disconnects.sum());
+        counter(out, "qqbot_deflate_in_bytes_total", "Bytes given to permessage-deflate", this.metrics.deflateBytesIn.sum());
+        counter(out, "qqbot_deflate_out_bytes_total", "Bytes produced by permessage-deflate", this.metrics.deflateBytesOut.sum());
+        counter(out, "qqbot_deflate_skipped_total", "Messages sent uncompressed because they were below the threshold", this.metrics.deflateSkipped.sum());
+        counter(out, "qqbot_inflate_in_bytes_total", "Compressed bytes received from the bot", this.metrics.inflateBytesIn.sum());
+        counter(out, "qqbot_inflate_out_bytes_total", "Bytes after inflating messages from the bot", this.metrics.inflateBytesOut.sum());
+        counter(out, "qqbot_heartbeat_misses_total", "Heartbeat pings that got no pong before the next one", this.metrics.heartbeatMisses.sum());
+        counter(out, "qqbot_heartbeat_timeouts_total", "Connections closed after too many missed heartbeats", this.metrics.heartbeatTimeouts.sum());
+
+        summary(out, "qqbot_encode_seconds", "Time to encode and queue an outgoing frame", Map.of("", this.metrics.encodeTime));
+        summary(out, "qqbot_decode_seconds", "Time to decode an incoming frame", Map.of("", this.metrics.decodeTime));
+        summary(out, "qqbot_deflate_seconds", "Time to compress an outgoing message", Map.of("", this.metrics.deflateTime));
+        summary(out, "qqbot_inflate_seconds", "Time to decompress an incoming message", Map.of("", this.metrics.inflateTime));
+        summary(out, "qqbot_heartbeat_rtt_seconds", "Round trip of a heartbeat ping", Map.of("", this.metrics.heartbeatRtt));
+        summary(out, "qqbot_round_trip_seconds", "Time from queueing an event to the bot's response", this.metrics.roundTrips());
+        summary(out, "qqbot_handler_seconds", "Time spent handling a request from the bot", this.metrics.handlerTimes());
+
+        out.append("# HELP qqbot_gauge Current values such as queue depths and connection states\n# TYPE qqbot_gauge gauge\n");
+        this.metrics.gauges().forEach((name, value) -> out.append("qqbot_gauge{name=\"").append(name).append("\"} ").append(value).append('\n'));
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    // Histograms keyed by type; an empty key means the summary has no type label
+    private static void summary(StringBuilder out, String name, String help, Map<String, LatencyHistogram> histograms) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" summary\n");
+        histograms.forEach((type, histogram) -> {
+            String label = type.isEmpty() ? "" : "type=\"" + type + "\"";
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{").append(label).append(label.isEmpty() ? "" : ",")
+                        .append("quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(histogram.quantile(quantile))).append('\n');
+            }
+            String labels = label.isEmpty() ? "" : "{" + label + "}";
+            out.append(name).append("_sum").append(labels).append(' ').append(seconds(histogram.sum())).append('\n');
+            out.append(name).append("_count").append(labels).append(' ').append(histogram.count()).append('\n');
+        });
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,74 @@
+package org.lonelysail.qqbot.server;
+
+import org.bukkit.Server;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.configuration.Configuration;
+import org.bukkit.plugin.Plugin;
+import org.lonelysail.qqbot.websocket.codec.RawJson;
+import org.lonelysail.qqbot.websocket.rpc.RpcRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// 插件内置的机器人请求处理器，所有机器人连接共用同一个注册表
+public class BuiltinHandlers {
+    private final Server server;
+    private final MainThreadExecutor mainThread;
+    // 玩家列表与占用率等查询只读取主线程定期采集的快照
+    private final SnapshotService snapshots;
+    private final long commandTimeout;
+    private final int commandMaxLines;
+    private final int commandConcurrency;
+
+    public BuiltinHandlers(Plugin plugin, Configuration config, MainThreadExecutor mainThread, SnapshotService snapshots) {
+        this.server = plugin.getServer();
+        this.mainThread = mainThread;
+        this.snapshots = snapshots;
+        this.commandTimeout = Math.max(1, config.getLong("command.timeout", 5000));
+        this.commandMaxLines = config.getInt("command.max_lines", 100);
+        this.commandConcurrency = config.getInt("command.concurrency", 4);
+    }
+
+    // 注册内置的请求处理器；命令自己负责切换到主线程并处理超时
+    public void register(RpcRegistry rpc) {
+        rpc.register("command", String.class, this::command, false, this.commandConcurrency);
+        rpc.register("player_list", String.class, this::playerList);
+        rpc.register("server_occupation", String.class, this::serverOccupation);
+        rpc.register("server_status", String.class, this::serverStatus);
+    }
+
+    // 处理命令请求：在主线程以代理控制台执行命令，命令结束或超时后返回收集到的输出
+    private CompletableFuture<String> command(String data) {
+        CommandOutput output = new CommandOutput(this.commandMaxLines);
+        CompletableFuture<String> result = new CompletableFuture<>();
+        // 同一 tick 内收到的多条命令会在同一个主线程任务中依次执行
+        this.mainThread.execute(() -> {
+            try {
+                ConsoleCommandSender console = CapturingCommandSender.wrap(this.server.getConsoleSender(), output);
+                this.server.dispatchCommand(console, data);
+                result.complete(output.isEmpty() ? "命令已执行，没有返回内容。" : output.text());
+            } catch (RuntimeException e) {
+                result.complete("命令执行失败：" + e.getMessage());
+            }
+        });
+        return result.orTimeout(this.commandTimeout, TimeUnit.MILLISECONDS).exceptionally(error -> {
+            String text = "命令已发送到服务器，但未在 " + this.commandTimeout / 1000.0 + " 秒内执行完毕。";
+            return output.isEmpty() ? text : text + "\n" + output.text();
+        });
+    }
+
+    // 获取在线玩家列表（已序列化的快照数据）
+    private RawJson playerList(String data) {
+        return this.snapshots.get().playerListJson();
+    }
+
+    // 获取服务器CPU和内存占用（已序列化的快照数据）
+    private RawJson serverOccupation(String data) {
+        return this.snapshots.get().occupationJson();
+    }
+
+    // 获取完整的服务器状态：玩家、CPU、内存、TPS、MSPT、区块与实体数量
+    private RawJson serverStatus(String data) {
+        return this.snapshots.get().statusJson();
+    }
+}
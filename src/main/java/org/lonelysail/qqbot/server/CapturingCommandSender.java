@@ -0,0 +1,80 @@
+package org.lonelysail.qqbot.server;
+
+import net.md_5.bungee.api.chat.BaseComponent;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+
+// 代理控制台：权限等行为与真实控制台相同，但发给它的消息都记录到 CommandOutput 中。
+// 原版命令由服务端直接写入控制台，无法通过这里获取输出。
+public final class CapturingCommandSender {
+    private CapturingCommandSender() {
+    }
+
+    public static ConsoleCommandSender wrap(ConsoleCommandSender console, CommandOutput output) {
+        CommandSender.Spigot spigot = new CommandSender.Spigot() {
+            @Override
+            public void sendMessage(BaseComponent component) {
+                output.add(BaseComponent.toLegacyText(component));
+            }
+
+            @Override
+            public void sendMessage(BaseComponent... components) {
+                output.add(BaseComponent.toLegacyText(components));
+            }
+
+            @Override
+            public void sendMessage(UUID sender, BaseComponent... components) {
+                output.add(BaseComponent.toLegacyText(components));
+            }
+        };
+
+        return (ConsoleCommandSender) Proxy.newProxyInstance(
+                CapturingCommandSender.class.getClassLoader(),
+                new Class<?>[]{ConsoleCommandSender.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "sendMessage", "sendRawMessage" -> {
+                            // 最后一个参数是消息内容，前面可能还有发送者的 UUID
+                            if (capture(output, args[args.length - 1])) return null;
+                        }
+                        case "spigot" -> {
+                            return spigot;
+                        }
+                        case "equals" -> {
+                            return proxy == args[0];
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(proxy);
+                        }
+                        default -> {
+                        }
+                    }
+                    return invoke(console, method, args);
+                });
+    }
+
+    private static boolean capture(CommandOutput output, Object message) {
+        if (message instanceof String line) {
+            output.add(line);
+            return true;
+        }
+        if (message instanceof String[] lines) {
+            for (String line : lines) output.add(line);
+            return true;
+        }
+        return false;
+    }
+
+    private static Object invoke(ConsoleCommandSender console, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(console, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.lonelysail.qqbot.server;
+
+import org.bukkit.configuration.Configuration;
+
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+// 聊天消息的令牌桶限流：每个玩家一个桶，另有一个全服共用的桶，两个桶都有令牌时消息才会转发。
+// 玩家的桶保存在以 UUID 两个 long 为键的开放寻址表中（线性探测），不为每个玩家创建对象。
+// 超出限制的消息只计数，由 flush 定期合并成每个玩家一条摘要。
+public class ChatLimiter {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final double playerRate;
+    private final double playerBurst;
+    private final double globalRate;
+    private final double globalBurst;
+
+    private long[] mostBits = new long[INITIAL_CAPACITY];
+    private long[] leastBits = new long[INITIAL_CAPACITY];
+    private double[] tokens = new double[INITIAL_CAPACITY];
+    private long[] refilledAt = new long[INITIAL_CAPACITY];
+    private int[] suppressed = new int[INITIAL_CAPACITY];
+    private String[] names = new String[INITIAL_CAPACITY];
+    private boolean[] used = new boolean[INITIAL_CAPACITY];
+    private int size;
+
+    private double globalTokens;
+    private long globalRefilledAt;
+    private int pendingDigests;
+
+    public ChatLimiter(Configuration config) {
+        this.playerRate = Math.max(0, config.getDouble("chat_limit.player.rate", 1));
+        this.playerBurst = Math.max(1, config.getDouble("chat_limit.player.burst", 5));
+        this.globalRate = Math.max(0, config.getDouble("chat_limit.global.rate", 10));
+        this.globalBurst = Math.max(1, config.getDouble("chat_limit.global.burst", 20));
+        this.globalTokens = this.globalBurst;
+        this.globalRefilledAt = System.nanoTime();
+    }
+
+    // 返回 true 表示消息可以转发；否则消息被计入该玩家的摘要
+    public synchronized boolean tryAcquire(UUID uuid, String name) {
+        long now = System.nanoTime();
+        int slot = this.slot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), now);
+
+        double player = Math.min(this.playerBurst, this.tokens[slot] + (now - this.refilledAt[slot]) * this.playerRate / 1e9);
+        this.refilledAt[slot] = now;
+        this.globalTokens = Math.min(this.globalBurst, this.globalTokens + (now - this.globalRefilledAt) * this.globalRate / 1e9);
+        this.globalRefilledAt = now;
+
+        if (player >= 1 && this.globalTokens >= 1) {
+            this.tokens[slot] = player - 1;
+            this.globalTokens -= 1;
+            return true;
+        }
+        this.tokens[slot] = player;
+        if (this.suppressed[slot]++ == 0) this.pendingDigests++;
+        this.names[slot] = name;
+        return false;
+    }
+
+    // 把每个玩家被合并的消息数量交给 digest，并清零计数
+    public void flush(BiConsumer<String, Integer> digest) {
+        String[] flushedNames;
+        int[] counts;
+        synchronized (this) {
+            if (this.pendingDigests == 0) return;
+            flushedNames = new String[this.pendingDigests];
+            counts = new int[this.pendingDigests];
+            int n = 0;
+            for (int i = 0; i < this.used.length; i++) {
+                if (!this.used[i] || this.suppressed[i] == 0) continue;
+                flushedNames[n] = this.names[i];
+                counts[n++] = this.suppressed[i];
+                this.suppressed[i] = 0;
+            }
+            this.pendingDigests = 0;
+        }
+        // 在锁外发送，聊天线程不会等待网络
+        for (int i = 0; i < flushedNames.length; i++) digest.accept(flushedNames[i], counts[i]);
+    }
+
+    // 玩家离开时释放他的桶；还没有发出的摘要交给 digest
+    public void forget(UUID uuid, BiConsumer<String, Integer> digest) {
+        String name = null;
+        int count = 0;
+        synchronized (this) {
+            int slot = this.find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (slot < 0) return;
+            if (this.suppressed[slot] > 0) {
+                name = this.names[slot];
+                count = this.suppressed[slot];
+                this.pendingDigests--;
+            }
+            this.remove(slot);
+        }
+        if (count > 0) digest.accept(name, count);
+    }
+
+    private static int hash(long most, long least) {
+        long h = most ^ least;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private int find(long most, long least) {
+        int mask = this.used.length - 1;
+        for (int i = hash(most, least) & mask; this.used[i]; i = (i + 1) & mask) {
+            if (this.mostBits[i] == most && this.leastBits[i] == least) return i;
+        }
+        return -1;
+    }
+
+    // 找到玩家的位置，不存在时插入一个装满令牌的新桶
+    private int slot(long most, long least, long now) {
+        int mask = this.used.length - 1;
+        int i = hash(most, least) & mask;
+        for (; this.used[i]; i = (i + 1) & mask) {
+            if (this.mostBits[i] == most && this.leastBits[i] == least) return i;
+        }
+        if ((this.size + 1) * 2 > this.used.length) {
+            this.resize(this.used.length * 2);
+            return this.slot(most, least, now);
+        }
+        this.used[i] = true;
+        this.mostBits[i] = most;
+        this.leastBits[i] = least;
+        this.tokens[i] = this.playerBurst;
+        this.refilledAt[i] = now;
+        this.suppressed[i] = 0;
+        this.names[i] = null;
+        this.size++;
+        return i;
+    }
+
+    // 线性探测表的删除：把后面同一探测链上的元素前移，不留墓碑
+    private void remove(int slot) {
+        int mask = this.used.length - 1;
+        int hole = slot;
+        for (int i = (slot + 1) & mask; this.used[i]; i = (i + 1) & mask) {
+            int home = hash(this.mostBits[i], this.leastBits[i]) & mask;
+            // 元素的理想位置不在 (hole, i] 之间时才能移动到空位
+            boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                this.move(i, hole);
+                hole = i;
+            }
+        }
+        this.used[hole] = false;
+        this.names[hole] = null;
+        this.size--;
+    }
+
+    private void move(int from, int to) {
+        this.mostBits[to] = this.mostBits[from];
+        this.leastBits[to] = this.leastBits[from];
+        this.tokens[to] = this.tokens[from];
+        this.refilledAt[to] = this.refilledAt[from];
+        this.suppressed[to] = this.suppressed[from];
+        this.names[to] = this.names[from];
+        this.used[to] = true;
+    }
+
+    private void resize(int capacity) {
+        long[] oldMost = this.mostBits;
+        long[] oldLeast = this.leastBits;
+        double[] oldTokens = this.tokens;
+        long[] oldRefilled = this.refilledAt;
+        int[] oldSuppressed = this.suppressed;
+        String[] oldNames = this.names;
+        boolean[] oldUsed = this.used;
+
+        this.mostBits = new long[capacity];
+        this.leastBits = new long[capacity];
+        this.tokens = new double[capacity];
+        this.refilledAt = new long[capacity];
+        this.suppressed = new int[capacity];
+        this.names = new String[capacity];
+        this.used = new boolean[capacity];
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldUsed.length; j++) {
+            if (!oldUsed[j]) continue;
+            int i = hash(oldMost[j], oldLeast[j]) & mask;
+            while (this.used[i]) i = (i + 1) & mask;
+            this.used[i] = true;
+            this.mostBits[i] = oldMost[j];
+            this.leastBits[i] = oldLeast[j];
+            this.tokens[i] = oldTokens[j];
+            this.refilledAt[i] = oldRefilled[j];
+            this.suppressed[i] = oldSuppressed[j];
+            this.names[i] = oldNames[j];
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.lonelysail.qqbot.server;
+
+import org.bukkit.ChatColor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 收集命令执行时发给控制台的输出，最多保留 maxLines 行
+public class CommandOutput {
+    private final int maxLines;
+    private final List<String> lines = new ArrayList<>();
+    private int dropped;
+
+    public CommandOutput(int maxLines) {
+        this.maxLines = Math.max(1, maxLines);
+    }
+
+    public synchronized void add(String message) {
+        if (message == null) return;
+        for (String line : message.split("\n")) {
+            if (this.lines.size() < this.maxLines) this.lines.add(ChatColor.stripColor(line));
+            else this.dropped++;
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.lines.isEmpty();
+    }
+
+    public synchronized String text() {
+        String text = String.join("\n", this.lines);
+        if (this.dropped > 0) text += "\n……另有 " + this.dropped + " 行输出未显示";
+        return text;
+    }
+}
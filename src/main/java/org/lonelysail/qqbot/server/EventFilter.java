@@ -0,0 +1,135 @@
+package org.lonelysail.qqbot.server;
+
+import org.bukkit.configuration.Configuration;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// config.yml 中 filters 规则编译成的过滤器，在事件处理器里、复制事件字段与编码之前执行。
+// 规则按顺序匹配，第一条匹配的规则决定结果：deny 丢弃，allow 按 sample 比例保留；没有规则匹配时保留。
+// 规则按事件类型预先分组，没有规则的事件类型只需一次查表；对象创建后不再修改，重新加载时整体替换。
+public final class EventFilter {
+    public static final EventFilter ALLOW_ALL = new EventFilter(Map.of(), 0);
+
+    private static final Set<String> EVENT_TYPES = Set.of("player_joined", "player_left", "player_chat", "player_death");
+    private static final Rule[] NO_RULES = new Rule[0];
+
+    private final Map<String, Rule[]> rules;
+    private final int size;
+
+    private EventFilter(Map<String, Rule[]> rules, int size) {
+        this.rules = rules;
+        this.size = size;
+    }
+
+    // 一条规则的匹配条件，只包含配置中写了的部分
+    @FunctionalInterface
+    private interface Condition {
+        boolean test(Player player, String message);
+
+        static Condition and(Condition first, Condition second) {
+            if (first == null) return second;
+            return (player, message) -> first.test(player, message) && second.test(player, message);
+        }
+    }
+
+    // sample 为匹配的事件中保留的比例，deny 规则为 0
+    private record Rule(Condition condition, double sample) {
+        boolean keep() {
+            if (this.sample >= 1) return true;
+            return this.sample > 0 && ThreadLocalRandom.current().nextDouble() < this.sample;
+        }
+    }
+
+    // 编译 filters 列表；配置有误时抛出 IllegalArgumentException，调用者继续使用原来的规则
+    public static EventFilter compile(Configuration config) {
+        List<Map<?, ?>> entries = config.getMapList("filters");
+        if (entries == null || entries.isEmpty()) return ALLOW_ALL;
+
+        Map<String, List<Rule>> grouped = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            Map<?, ?> entry = entries.get(i);
+            String where = "filters[" + (i + 1) + "]";
+            Rule rule = new Rule(condition(entry, where), sample(entry, where));
+            Set<String> events = strings(entry.get("events"));
+            for (String type : events.isEmpty() ? EVENT_TYPES : events) {
+                if (!EVENT_TYPES.contains(type)) throw new IllegalArgumentException(where + " 中未知的事件类型 " + type);
+                grouped.computeIfAbsent(type, key -> new ArrayList<>()).add(rule);
+            }
+        }
+        Map<String, Rule[]> rules = new HashMap<>();
+        grouped.forEach((type, list) -> rules.put(type, list.toArray(NO_RULES)));
+        return new EventFilter(Map.copyOf(rules), entries.size());
+    }
+
+    private static Condition condition(Map<?, ?> entry, String where) {
+        Condition condition = null;
+
+        Set<String> worlds = strings(entry.get("worlds"));
+        if (!worlds.isEmpty()) condition = Condition.and(condition, (player, message) -> worlds.contains(player.getWorld().getName()));
+
+        Object permission = entry.get("permission");
+        if (permission != null) {
+            // 以 ! 开头表示玩家没有该权限时匹配
+            String node = permission.toString();
+            boolean negated = node.startsWith("!");
+            String name = negated ? node.substring(1) : node;
+            condition = Condition.and(condition, (player, message) -> player.hasPermission(name) != negated);
+        }
+
+        Object regex = entry.get("message");
+        if (regex != null) {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(regex.toString());
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException(where + " 的 message 不是有效的正则表达式：" + e.getDescription());
+            }
+            // 加入与离开事件没有消息，带 message 条件的规则不会匹配它们
+            condition = Condition.and(condition, (player, message) -> message != null && pattern.matcher(message).find());
+        }
+        return condition != null ? condition : (player, message) -> true;
+    }
+
+    private static double sample(Map<?, ?> entry, String where) {
+        String action = entry.get("action") == null ? "allow" : entry.get("action").toString();
+        if (action.equalsIgnoreCase("deny")) return 0;
+        if (!action.equalsIgnoreCase("allow")) throw new IllegalArgumentException(where + " 的 action 只能是 allow 或 deny");
+        Object sample = entry.get("sample");
+        if (sample == null) return 1;
+        if (!(sample instanceof Number number) || number.doubleValue() < 0 || number.doubleValue() > 1) {
+            throw new IllegalArgumentException(where + " 的 sample 应为 0 到 1 之间的数");
+        }
+        return number.doubleValue();
+    }
+
+    private static Set<String> strings(Object value) {
+        if (!(value instanceof Collection<?> collection)) return Set.of();
+        List<String> values = new ArrayList<>();
+        for (Object item : collection) values.add(String.valueOf(item));
+        return Set.copyOf(values);
+    }
+
+    // 规则数量，用于重新加载后的提示
+    public int size() {
+        return this.size;
+    }
+
+    // 在触发事件的线程上调用；message 为聊天或死亡消息，其他事件为 null
+    public boolean accepts(String type, Player player, String message) {
+        Rule[] candidates = this.rules.get(type);
+        if (candidates == null) return true;
+        for (Rule rule : candidates) {
+            if (rule.condition().test(player, message)) return rule.keep();
+        }
+        return true;
+    }
+}
@@ -1,57 +1,77 @@
 package org.lonelysail.qqbot.server;
 
-import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.PlayerDeathEvent;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
-import org.lonelysail.qqbot.websocket.WsSender;
-import org.bukkit.Bukkit;
+import org.lonelysail.qqbot.websocket.EventRelay;
 
+// 事件处理器只在触发线程上把需要的字段复制到 GameEvent 中，之后的发送都不再访问 Bukkit 对象
 public class EventListener implements Listener {
-    private final WsSender sender;
+    // 把事件发给所有接受该事件的机器人
+    private final EventRelay relay;
+    // 未开启聊天限流时为 null
+    private final ChatLimiter chatLimiter;
+    // filters 规则，/qq reload 时整体替换
+    private volatile EventFilter filter;
 
-    public EventListener(WsSender sender) {
-        this.sender = sender;
+    public EventListener(EventRelay relay, ChatLimiter chatLimiter, EventFilter filter) {
+        this.relay = relay;
+        this.chatLimiter = chatLimiter;
+        this.filter = filter;
+    }
+
+    public void setFilter(EventFilter filter) {
+        this.filter = filter;
+    }
+
+    // 发送被合并的聊天消息摘要，由定时任务调用
+    public void flushChatDigests() {
+        if (this.chatLimiter != null) this.chatLimiter.flush(this::sendChatDigest);
+    }
+
+    private void sendChatDigest(String name, int count) {
+        this.relay.sendPlayerChatAsync(name, "……（另有 " + count + " 条消息被合并）");
     }
 
     // 当玩家退出游戏时触发
     @EventHandler
     public void PlayerQuit(PlayerQuitEvent event) {
-        // 使用异步线程发送玩家离开游戏的消息
-        Bukkit.getScheduler().runTaskAsynchronously(Bukkit.getPluginManager().getPlugin("QQBot"), () -> {
-            this.sender.sendPlayerLeft(event.getPlayer().getName());
-        });
+        // 被过滤的离开事件也要释放玩家的限流桶
+        if (this.filter.accepts("player_left", event.getPlayer(), null)) {
+            // 异步发送玩家离开游戏的消息
+            this.relay.send(GameEvent.PlayerLeft.of(event));
+        }
+        if (this.chatLimiter != null) this.chatLimiter.forget(event.getPlayer().getUniqueId(), this::sendChatDigest);
     }
 
     // 当玩家加入游戏时触发
     @EventHandler
     public void playerJoin(PlayerJoinEvent event) {
-        // 使用异步线程发送玩家加入游戏的消息
-        Bukkit.getScheduler().runTaskAsynchronously(Bukkit.getPluginManager().getPlugin("QQBot"), () -> {
-            this.sender.sendPlayerJoined(event.getPlayer().getName());
-        });
+        if (!this.filter.accepts("player_joined", event.getPlayer(), null)) return;
+        // 异步发送玩家加入游戏的消息
+        this.relay.send(GameEvent.PlayerJoined.of(event));
     }
 
     // 当玩家聊天时触发
     @EventHandler
     public void playerChat(AsyncPlayerChatEvent event) {
-        // 使用异步线程发送玩家聊天的消息
-        Bukkit.getScheduler().runTaskAsynchronously(Bukkit.getPluginManager().getPlugin("QQBot"), () -> {
-            this.sender.sendPlayerChat(event.getPlayer().getName(), event.getMessage());
-        });
+        // 先过滤再限流，被过滤的消息不占用令牌
+        if (!this.filter.accepts("player_chat", event.getPlayer(), event.getMessage())) return;
+        GameEvent.PlayerChat chat = GameEvent.PlayerChat.of(event);
+        // 超出限流的消息不单独发送，稍后合并为一条摘要
+        if (this.chatLimiter != null && !this.chatLimiter.tryAcquire(chat.uuid(), chat.name())) return;
+        // 异步发送玩家聊天的消息
+        this.relay.send(chat);
     }
 
     // 当玩家死亡时触发
     @EventHandler
     public void playerDeath(PlayerDeathEvent event) {
-        // 获取死亡的玩家对象
-        Player player = event.getEntity();
-        // 使用异步线程发送玩家死亡的消息
-        Bukkit.getScheduler().runTaskAsynchronously(Bukkit.getPluginManager().getPlugin("QQBot"), () -> {
-            this.sender.sendPlayerDeath(player.getName(), event.getDeathMessage());
-        });
+        if (!this.filter.accepts("player_death", event.getEntity(), event.getDeathMessage())) return;
+        // 异步发送玩家死亡的消息
+        this.relay.send(GameEvent.PlayerDeath.of(event));
     }
 }
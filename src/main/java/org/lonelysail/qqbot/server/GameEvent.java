@@ -0,0 +1,93 @@
+package org.lonelysail.qqbot.server;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+// 在触发事件的线程上从 Bukkit 事件中复制出的字段，之后交给发送线程；不持有事件或玩家对象
+public sealed interface GameEvent {
+    UUID uuid();
+
+    String name();
+
+    String world();
+
+    // 发给机器人的事件类型
+    String type();
+
+    // 发给机器人的数据，格式与旧版本相同
+    Object data();
+
+    record PlayerJoined(UUID uuid, String name, String world) implements GameEvent {
+        public static PlayerJoined of(PlayerJoinEvent event) {
+            Player player = event.getPlayer();
+            return new PlayerJoined(player.getUniqueId(), player.getName(), player.getWorld().getName());
+        }
+
+        @Override
+        public String type() {
+            return "player_joined";
+        }
+
+        @Override
+        public Object data() {
+            return this.name;
+        }
+    }
+
+    record PlayerLeft(UUID uuid, String name, String world) implements GameEvent {
+        public static PlayerLeft of(PlayerQuitEvent event) {
+            Player player = event.getPlayer();
+            return new PlayerLeft(player.getUniqueId(), player.getName(), player.getWorld().getName());
+        }
+
+        @Override
+        public String type() {
+            return "player_left";
+        }
+
+        @Override
+        public Object data() {
+            return this.name;
+        }
+    }
+
+    record PlayerChat(UUID uuid, String name, String world, String message) implements GameEvent {
+        public static PlayerChat of(AsyncPlayerChatEvent event) {
+            Player player = event.getPlayer();
+            return new PlayerChat(player.getUniqueId(), player.getName(), player.getWorld().getName(), event.getMessage());
+        }
+
+        @Override
+        public String type() {
+            return "player_chat";
+        }
+
+        @Override
+        public Object data() {
+            return Arrays.asList(this.name, this.message);
+        }
+    }
+
+    record PlayerDeath(UUID uuid, String name, String world, String message) implements GameEvent {
+        public static PlayerDeath of(PlayerDeathEvent event) {
+            Player player = event.getEntity();
+            return new PlayerDeath(player.getUniqueId(), player.getName(), player.getWorld().getName(), event.getDeathMessage());
+        }
+
+        @Override
+        public String type() {
+            return "player_death";
+        }
+
+        @Override
+        public Object data() {
+            return Arrays.asList(this.name, this.message);
+        }
+    }
+}
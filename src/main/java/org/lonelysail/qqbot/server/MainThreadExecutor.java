@@ -0,0 +1,51 @@
+package org.lonelysail.qqbot.server;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 把其他线程提交的任务收集起来，每个 tick 只调度一次主线程任务统一执行
+public class MainThreadExecutor implements Executor {
+    private final Plugin plugin;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean stopped;
+
+    public MainThreadExecutor(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (this.stopped) throw new RejectedExecutionException("插件已禁用");
+        this.tasks.add(task);
+        // 队列中已有任务时，本 tick 的调度已经安排好了
+        if (this.scheduled.compareAndSet(false, true)) {
+            this.plugin.getServer().getScheduler().runTask(this.plugin, this::drain);
+        }
+    }
+
+    // 插件禁用时调用：cancelTasks 取消的 drain 不会再运行，之后提交的任务直接拒绝，未执行的任务丢弃
+    public void stop() {
+        this.stopped = true;
+        this.tasks.clear();
+        this.scheduled.set(false);
+    }
+
+    private void drain() {
+        // 先清除标记再取任务，之后提交的任务会安排到下一个 tick
+        this.scheduled.set(false);
+        Runnable task;
+        while ((task = this.tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                this.plugin.getLogger().warning("执行主线程任务时发生错误：" + e.getMessage());
+            }
+        }
+    }
+}
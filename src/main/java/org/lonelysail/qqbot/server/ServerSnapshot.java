@@ -0,0 +1,44 @@
+package org.lonelysail.qqbot.server;
+
+import org.lonelysail.qqbot.websocket.codec.JsonWire;
+import org.lonelysail.qqbot.websocket.codec.RawJson;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 某一时刻的服务器状态，创建后不再改变；常用查询的响应在创建时就序列化好，之后的查询直接复用
+public record ServerSnapshot(
+        long timestamp,
+        List<String> players,
+        double cpu,
+        double memory,
+        long heapUsed,
+        long heapMax,
+        double tps,
+        double mspt,
+        int chunks,
+        int entities,
+        RawJson playerListJson,
+        RawJson occupationJson,
+        RawJson statusJson
+) {
+    public static final ServerSnapshot EMPTY = of(0, List.of(), 0, 0, 0, 0, 20, 0, 0, 0);
+
+    public static ServerSnapshot of(long timestamp, List<String> players, double cpu, double memory, long heapUsed,
+                                    long heapMax, double tps, double mspt, int chunks, int entities) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("players", players);
+        status.put("cpu", cpu);
+        status.put("memory", memory);
+        status.put("heap_used", heapUsed);
+        status.put("heap_max", heapMax);
+        status.put("tps", tps);
+        status.put("mspt", mspt);
+        status.put("chunks", chunks);
+        status.put("entities", entities);
+        status.put("timestamp", timestamp);
+        return new ServerSnapshot(timestamp, List.copyOf(players), cpu, memory, heapUsed, heapMax, tps, mspt, chunks, entities,
+                JsonWire.toRawJson(players), JsonWire.toRawJson(List.of(cpu, memory)), JsonWire.toRawJson(status));
+    }
+}
@@ -0,0 +1,115 @@
+package org.lonelysail.qqbot.server;
+
+import com.sun.management.OperatingSystemMXBean;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+// 每隔 interval 个 tick 在主线程采集一次服务器状态，其他线程通过 volatile 引用无锁读取
+public class SnapshotService {
+    private final Plugin plugin;
+    private final Server server;
+    private final long interval;
+    private final OperatingSystemMXBean bean = ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
+    // Paper 提供的平均 tick 耗时，Spigot 上不存在
+    private final Method averageTickTime;
+    // Paper 的 World.getEntityCount 与 getChunkCount 只读计数，不创建实体列表和区块数组；在第一次采集时按世界的实现类查找
+    private Method entityCount;
+    private Method chunkCount;
+    private boolean countersResolved;
+
+    private volatile ServerSnapshot snapshot = ServerSnapshot.EMPTY;
+    private BukkitTask task;
+    private long lastRefresh;
+
+    public SnapshotService(Plugin plugin, long interval) {
+        this.plugin = plugin;
+        this.server = plugin.getServer();
+        this.interval = Math.max(1, interval);
+        this.averageTickTime = findMethod(this.server.getClass(), "getAverageTickTime");
+    }
+
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public void start() {
+        this.task = this.server.getScheduler().runTaskTimer(this.plugin, this::refresh, 0, this.interval);
+    }
+
+    public void stop() {
+        if (this.task != null) this.task.cancel();
+    }
+
+    public ServerSnapshot get() {
+        return this.snapshot;
+    }
+
+    private void refresh() {
+        long now = System.nanoTime();
+        // 两次采集之间实际经过的时间换算出 TPS
+        double tps = 20;
+        double tickMillis = 50;
+        if (this.lastRefresh != 0) {
+            tickMillis = (now - this.lastRefresh) / 1_000_000.0 / this.interval;
+            tps = Math.min(20, 1000 / tickMillis);
+        }
+        this.lastRefresh = now;
+
+        List<String> players = new ArrayList<>();
+        for (Player player : this.server.getOnlinePlayers()) players.add(player.getName());
+
+        int chunks = 0;
+        int entities = 0;
+        for (World world : this.server.getWorlds()) {
+            if (!this.countersResolved) {
+                this.entityCount = findMethod(world.getClass(), "getEntityCount");
+                this.chunkCount = findMethod(world.getClass(), "getChunkCount");
+                this.countersResolved = true;
+            }
+            chunks += this.count(this.chunkCount, world, () -> world.getLoadedChunks().length);
+            entities += this.count(this.entityCount, world, () -> world.getEntities().size());
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        long totalMemory = runtime.totalMemory();
+        long usedMemory = totalMemory - runtime.freeMemory();
+
+        this.snapshot = ServerSnapshot.of(System.currentTimeMillis(), players, this.bean.getProcessCpuLoad() * 100,
+                ((double) usedMemory / totalMemory) * 100, usedMemory, runtime.maxMemory(), tps, this.mspt(tickMillis), chunks, entities);
+    }
+
+    // 没有 Paper 的计数方法时退回到 Spigot 的列表长度
+    private int count(Method counter, World world, IntSupplier fallback) {
+        if (counter != null) {
+            try {
+                return ((Number) counter.invoke(world)).intValue();
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+            }
+        }
+        return fallback.getAsInt();
+    }
+
+    // 没有 Paper 的 tick 耗时时，以每个 tick 的实际间隔作为上限估计
+    private double mspt(double tickMillis) {
+        if (this.averageTickTime != null) {
+            try {
+                return ((Number) this.averageTickTime.invoke(this.server)).doubleValue();
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+            }
+        }
+        return tickMillis;
+    }
+}
@@ -3,15 +3,33 @@ package org.lonelysail.qqbot.server.commands;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
-import org.lonelysail.qqbot.websocket.WsSender;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.lonelysail.qqbot.metrics.LatencyHistogram;
+import org.lonelysail.qqbot.metrics.Metrics;
+import org.lonelysail.qqbot.server.EventFilter;
+import org.lonelysail.qqbot.server.EventListener;
+import org.lonelysail.qqbot.websocket.EventRelay;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
 
 public class QQCommand implements CommandExecutor {
     private final String name;
-    private final WsSender sender;
+    private final EventRelay relay;
+    private final JavaPlugin plugin;
+    private final Metrics metrics;
+    private final EventListener listener;
 
-    public QQCommand(WsSender sender, String name) {
+    public QQCommand(JavaPlugin plugin, EventRelay relay, EventListener listener, String name, Metrics metrics) {
         this.name = name;
-        this.sender = sender;
+        this.relay = relay;
+        this.listener = listener;
+        this.plugin = plugin;
+        this.metrics = metrics;
     }
 
     @Override
@@ -19,9 +37,76 @@ public class QQCommand implements CommandExecutor {
         if (args.length != 1) {
             return false;
         }
+        // 有权限的玩家输入 /qq stats 查看运行统计，其他人仍然会把 stats 当作消息发送
+        if (args[0].equalsIgnoreCase("stats") && sender.hasPermission("qqbot.stats")) {
+            this.sendStats(sender);
+            return true;
+        }
+        if (args[0].equalsIgnoreCase("reload") && sender.hasPermission("qqbot.reload")) {
+            this.reloadFilters(sender);
+            return true;
+        }
         String message = String.format("[%s] <%s> %s", this.name, sender.getName(), args[0]);
-        if (this.sender.sendSynchronousMessage(message)) sender.sendMessage("§a发送消息成功！");
-        else sender.sendMessage("§c发送消息失败！");
+        // 等待机器人响应时不阻塞主线程，结果回到主线程后再反馈给玩家
+        this.relay.sendSynchronousMessageAsync(message).thenAccept(success ->
+                this.plugin.getServer().getScheduler().runTask(this.plugin, () -> {
+                    if (success) sender.sendMessage("§a发送消息成功！");
+                    else sender.sendMessage("§c发送消息失败！");
+                }));
         return true;
     }
+
+    // 重新读取 config.yml 并替换事件过滤规则，规则有误时继续使用原来的规则。
+    // 只从新读取的文件编译过滤器，插件与各组件持有的配置保持不变，其他配置仍需重启后生效
+    private void reloadFilters(CommandSender sender) {
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.load(new File(this.plugin.getDataFolder(), "config.yml"));
+        } catch (IOException | InvalidConfigurationException e) {
+            sender.sendMessage("§c无法读取 config.yml，仍使用原来的规则：" + e.getMessage());
+            return;
+        }
+        try {
+            EventFilter filter = EventFilter.compile(config);
+            this.listener.setFilter(filter);
+            sender.sendMessage("§a已重新加载 " + filter.size() + " 条事件过滤规则。");
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage("§c事件过滤规则有误，仍使用原来的规则：" + e.getMessage());
+        }
+    }
+
+    // 显示与机器人通信的统计数据
+    private void sendStats(CommandSender sender) {
+        sender.sendMessage("§6[QQBot] 运行统计");
+        sender.sendMessage(String.format("§7发送 %d 帧 / %.1f KiB，接收 %d 帧 / %.1f KiB",
+                this.metrics.framesOut.sum(), this.metrics.bytesOut.sum() / 1024.0,
+                this.metrics.framesIn.sum(), this.metrics.bytesIn.sum() / 1024.0));
+        sender.sendMessage(String.format("§7响应超时 %d 次，连接尝试 %d 次，断线 %d 次",
+                this.metrics.timeouts.sum(), this.metrics.connectAttempts.sum(), this.metrics.disconnects.sum()));
+        sender.sendMessage(String.format("§7编码 p99 %s，解码 p99 %s",
+                millis(this.metrics.encodeTime.quantile(0.99)), millis(this.metrics.decodeTime.quantile(0.99))));
+        sender.sendMessage(String.format(Locale.ROOT, "§7压缩率 %.1f%%（%.1f KiB -> %.1f KiB，%d 条未压缩），压缩耗时 %s，解压耗时 %s",
+                this.metrics.compressionRatio() * 100, this.metrics.deflateBytesIn.sum() / 1024.0, this.metrics.deflateBytesOut.sum() / 1024.0,
+                this.metrics.deflateSkipped.sum(), millis(this.metrics.deflateTime.sum()), millis(this.metrics.inflateTime.sum())));
+        sender.sendMessage(String.format("§7心跳延迟 p50 %s，p99 %s，未回应 %d 次，因心跳超时断开 %d 次",
+                millis(this.metrics.heartbeatRtt.quantile(0.5)), millis(this.metrics.heartbeatRtt.quantile(0.99)),
+                this.metrics.heartbeatMisses.sum(), this.metrics.heartbeatTimeouts.sum()));
+        for (Map.Entry<String, LatencyHistogram> entry : this.metrics.roundTrips().entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            sender.sendMessage(String.format("§7往返 %s：p50 %s，p99 %s，最大 %s（%d 次）", entry.getKey(),
+                    millis(histogram.quantile(0.5)), millis(histogram.quantile(0.99)), millis(histogram.max()), histogram.count()));
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : this.metrics.handlerTimes().entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            sender.sendMessage(String.format("§7处理 %s：p50 %s，p99 %s（%d 次）", entry.getKey(),
+                    millis(histogram.quantile(0.5)), millis(histogram.quantile(0.99)), histogram.count()));
+        }
+        StringBuilder gauges = new StringBuilder("§7");
+        this.metrics.gauges().forEach((gauge, value) -> gauges.append(gauge).append('=').append(value).append(' '));
+        sender.sendMessage(gauges.toString().trim());
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f ms", nanos / 1_000_000.0);
+    }
 }
@@ -0,0 +1,253 @@
+package org.lonelysail.qqbot.websocket;
+
+import org.bukkit.configuration.Configuration;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.framing.CloseFrame;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+// Keeps the websocket connections alive from its own threads, never from the server main thread.
+// Every link connects on its own thread, so all handshakes run in parallel, each bounded by the connect timeout.
+// Failed attempts back off exponentially with jitter up to a maximum interval; after enough consecutive
+// failures the circuit opens, senders fail fast, and a single trial connection is made once it half-opens.
+// While a link is connected its heartbeat runs on the same threads.
+public class ConnectionSupervisor {
+    public enum State { DISCONNECTED, CONNECTING, CONNECTED, BACKOFF, CIRCUIT_OPEN, HALF_OPEN, STOPPED }
+
+    public interface StateListener {
+        void onStateChange(String name, State from, State to);
+    }
+
+    private final Logger logger;
+    private final ScheduledThreadPoolExecutor executor;
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<Link> links = new CopyOnWriteArrayList<>();
+
+    private final long initialDelay;
+    private final long maxDelay;
+    private final double multiplier;
+    private final double jitter;
+    private final int failureThreshold;
+    private final long circuitOpenTime;
+    private final long connectTimeout;
+    private volatile boolean stopped;
+
+    public ConnectionSupervisor(Logger logger, Configuration config) {
+        this.logger = logger;
+        this.initialDelay = Math.max(0, config.getLong("reconnect.initial_delay", 1000));
+        this.maxDelay = Math.max(this.initialDelay, config.getLong("reconnect.max_delay", 60000));
+        this.multiplier = Math.max(1, config.getDouble("reconnect.multiplier", 2));
+        this.jitter = Math.min(1, Math.max(0, config.getDouble("reconnect.jitter", 0.2)));
+        this.failureThreshold = Math.max(1, config.getInt("reconnect.failure_threshold", 8));
+        this.circuitOpenTime = Math.max(0, config.getLong("reconnect.circuit_open_time", 120000));
+        this.connectTimeout = connectTimeout(config);
+
+        // One thread per connection, so a slow handshake on one socket never delays another
+        this.executor = new ScheduledThreadPoolExecutor(2, runnable -> {
+            Thread thread = new Thread(runnable, "QQBot-Supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Bounds both the TCP connect (passed to the client) and the whole handshake (enforced by the link)
+    public static int connectTimeout(Configuration config) {
+        return Math.max(1, config.getInt("reconnect.connect_timeout", 10000));
+    }
+
+    public Link supervise(String name, WebSocketClient client, Heartbeat heartbeat) {
+        Link link = new Link(name, client, heartbeat);
+        this.links.add(link);
+        if (this.links.size() > this.executor.getCorePoolSize()) this.executor.setCorePoolSize(this.links.size());
+        return link;
+    }
+
+    public void addListener(StateListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public List<Link> getLinks() {
+        return List.copyOf(this.links);
+    }
+
+    // Stop reconnecting and wait until the deadline (System.nanoTime) for the supervisor threads to exit;
+    // connections are closed by their owners afterwards
+    public void shutdown(long deadline) {
+        this.stopped = true;
+        for (Link link : this.links) link.stop();
+        this.executor.shutdownNow();
+        try {
+            if (!this.executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                this.logger.warning("[Supervisor] 连接线程未能在限定时间内退出。");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void shutdown() {
+        this.shutdown(System.nanoTime());
+    }
+
+    // Close a connection and wait for the closing handshake until the deadline, then drop the socket.
+    // A client that never connected has nothing to close, and closeBlocking() would wait for it forever.
+    public static void close(WebSocketClient client, long deadline) throws InterruptedException {
+        if (!client.isOpen() && !client.isClosing()) return;
+        client.close(CloseFrame.GOING_AWAY, "服务器关闭");
+        while (!client.isClosed() && System.nanoTime() < deadline) Thread.sleep(5);
+        if (!client.isClosed()) client.closeConnection(CloseFrame.GOING_AWAY, "服务器关闭");
+    }
+
+    // The supervised state of one connection
+    public final class Link {
+        private final String name;
+        private final WebSocketClient client;
+        private final Heartbeat heartbeat;
+        private State state = State.DISCONNECTED;
+        private int failures;
+        private boolean attempted;
+        private ScheduledFuture<?> scheduled;
+        // Completed by the client's onOpen or onClose while an attempt is waiting for its handshake
+        private CompletableFuture<Boolean> outcome;
+
+        private Link(String name, WebSocketClient client, Heartbeat heartbeat) {
+            this.name = name;
+            this.client = client;
+            this.heartbeat = heartbeat;
+        }
+
+        public String name() {
+            return this.name;
+        }
+
+        public synchronized State state() {
+            return this.state;
+        }
+
+        // While the circuit is open callers should fail fast instead of waiting for the connection
+        public synchronized boolean isCircuitOpen() {
+            return this.state == State.CIRCUIT_OPEN;
+        }
+
+        // First connection attempt, made off the calling thread
+        public synchronized void start() {
+            if (this.state == State.DISCONNECTED) this.schedule(0);
+        }
+
+        // Ask for a reconnect now, unless one is already on its way or the circuit is open
+        public synchronized void requestReconnect() {
+            if (this.state == State.DISCONNECTED) this.schedule(0);
+        }
+
+        // Called from the client's onOpen
+        public synchronized void connectionOpened() {
+            if (this.outcome != null) this.outcome.complete(true);
+            this.failures = 0;
+            if (this.state == State.STOPPED) return;
+            this.transition(State.CONNECTED);
+            this.heartbeat.start(executor);
+        }
+
+        // Called from the client's onClose; a failed attempt is handled by the attempt itself
+        public synchronized void connectionLost() {
+            if (this.outcome != null) this.outcome.complete(false);
+            this.heartbeat.stop();
+            if (this.state != State.CONNECTED) return;
+            this.transition(State.DISCONNECTED);
+            this.schedule(this.delay());
+        }
+
+        private synchronized void stop() {
+            if (this.scheduled != null) this.scheduled.cancel(false);
+            this.heartbeat.stop();
+            this.transition(State.STOPPED);
+        }
+
+        private void schedule(long delay) {
+            if (stopped) return;
+            if (this.scheduled != null && !this.scheduled.isDone()) return;
+            if (this.state == State.DISCONNECTED && delay > 0) this.transition(State.BACKOFF);
+            this.scheduled = executor.schedule(this::attempt, delay, TimeUnit.MILLISECONDS);
+        }
+
+        // Exponential backoff from the number of consecutive failures, spread by +/- jitter
+        private long delay() {
+            double base = Math.min(maxDelay, initialDelay * Math.pow(multiplier, Math.min(Math.max(0, this.failures - 1), 30)));
+            double spread = base * jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+            return (long) Math.max(0, Math.min(maxDelay, base + spread));
+        }
+
+        private void attempt() {
+            boolean first;
+            CompletableFuture<Boolean> outcome = new CompletableFuture<>();
+            synchronized (this) {
+                if (this.state == State.STOPPED || this.state == State.CONNECTED) return;
+                this.transition(this.state == State.CIRCUIT_OPEN ? State.HALF_OPEN : State.CONNECTING);
+                first = !this.attempted;
+                this.attempted = true;
+                this.outcome = outcome;
+            }
+
+            // The client's own blocking connect has no bound on the handshake, so wait for onOpen/onClose here
+            boolean connected;
+            try {
+                if (first) this.client.connect();
+                else this.client.reconnect();
+                connected = outcome.get(connectTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (TimeoutException e) {
+                logger.warning("[Supervisor] " + this.name + " 连接超时（" + connectTimeout + " 毫秒）。");
+                // Abort the handshake so the next reconnect does not wait for it
+                this.client.closeConnection(CloseFrame.NEVER_CONNECTED, "连接超时");
+                connected = false;
+            } catch (ExecutionException | RuntimeException e) {
+                logger.warning("[Supervisor] " + this.name + " 连接时发生错误：" + e.getMessage());
+                connected = false;
+            }
+
+            synchronized (this) {
+                this.outcome = null;
+                if (this.state == State.STOPPED) return;
+                if (connected && this.client.isOpen()) {
+                    this.failures = 0;
+                    this.transition(State.CONNECTED);
+                    return;
+                }
+                this.failures++;
+                if (this.state == State.HALF_OPEN || this.failures >= failureThreshold) {
+                    logger.warning("[Supervisor] " + this.name + " 连续 " + this.failures + " 次连接失败，暂停重连 " + circuitOpenTime / 1000 + " 秒。");
+                    this.transition(State.CIRCUIT_OPEN);
+                    this.scheduled = executor.schedule(this::attempt, circuitOpenTime, TimeUnit.MILLISECONDS);
+                } else {
+                    this.transition(State.BACKOFF);
+                    this.scheduled = executor.schedule(this::attempt, this.delay(), TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        private void transition(State next) {
+            State previous = this.state;
+            if (previous == next) return;
+            this.state = next;
+            logger.fine("[Supervisor] " + this.name + " 状态 " + previous + " -> " + next);
+            for (StateListener listener : listeners) {
+                try {
+                    listener.onStateChange(this.name, previous, next);
+                } catch (RuntimeException e) {
+                    logger.warning("[Supervisor] 状态监听器发生错误：" + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.lonelysail.qqbot.websocket;
+
+import org.bukkit.configuration.Configuration;
+import org.lonelysail.qqbot.server.GameEvent;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+// One bot backend the plugin connects to, from the "endpoints" list in config.yml.
+// Without that list the top-level uri/token/name form a single endpoint, so older configs keep working.
+// An empty events or worlds set accepts everything. Ids name each endpoint's outbox directory and metrics,
+// so they must be unique and may not be the reserved "default".
+public record Endpoint(String id, URI uri, String token, String name, Set<String> events, Set<String> worlds) {
+    public static final String DEFAULT_ID = "default";
+
+    // Throws IllegalArgumentException when the endpoints list is invalid
+    public static List<Endpoint> load(Configuration config) {
+        List<Map<?, ?>> entries = config.getMapList("endpoints");
+        if (entries == null || entries.isEmpty()) {
+            return List.of(new Endpoint(DEFAULT_ID, URI.create(Objects.requireNonNull(config.getString("uri"))),
+                    config.getString("token"), config.getString("name"), Set.of(), Set.of()));
+        }
+        List<Endpoint> endpoints = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < entries.size(); i++) {
+            Map<?, ?> entry = entries.get(i);
+            Object uri = entry.get("uri");
+            if (uri == null) throw new IllegalArgumentException("endpoints[" + i + "] 缺少 uri");
+            String id = string(entry.get("id"), String.valueOf(i + 1));
+            if (DEFAULT_ID.equals(id)) throw new IllegalArgumentException("endpoints[" + i + "] 的 id 不能是保留的 " + DEFAULT_ID);
+            if (!ids.add(id)) throw new IllegalArgumentException("endpoints[" + i + "] 的 id " + id + " 与前面的机器人重复");
+            endpoints.add(new Endpoint(id, URI.create(uri.toString()),
+                    string(entry.get("token"), config.getString("token")),
+                    string(entry.get("name"), config.getString("name")),
+                    strings(entry.get("events")), strings(entry.get("worlds"))));
+        }
+        return endpoints;
+    }
+
+    private static String string(Object value, String fallback) {
+        return value == null ? fallback : value.toString();
+    }
+
+    private static Set<String> strings(Object value) {
+        if (!(value instanceof Collection<?> collection)) return Set.of();
+        List<String> values = new ArrayList<>();
+        for (Object item : collection) values.add(String.valueOf(item));
+        return Set.copyOf(values);
+    }
+
+    public boolean isDefault() {
+        return DEFAULT_ID.equals(this.id);
+    }
+
+    // Name for logs and metrics: "Sender" for the default endpoint, "Sender[id]" otherwise
+    public String label(String role) {
+        return this.isDefault() ? role : role + "[" + this.id + "]";
+    }
+
+    public boolean accepts(String type) {
+        return this.events.isEmpty() || this.events.contains(type);
+    }
+
+    public boolean accepts(GameEvent event) {
+        return this.accepts(event.type()) && (this.worlds.isEmpty() || event.world() == null || this.worlds.contains(event.world()));
+    }
+}
@@ -0,0 +1,99 @@
+package org.lonelysail.qqbot.websocket;
+
+import org.lonelysail.qqbot.server.GameEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Fans outgoing events out to every configured bot endpoint whose filters accept them.
+// The captured event is shared, but each sender encodes its own frames: codec, request ids and batching are
+// negotiated per connection, and each endpoint keeps its own outbox, so per-bot work grows with the bot count.
+public class EventRelay {
+    private final Endpoint[] endpoints;
+    private final WsSender[] senders;
+    // Set when the plugin is disabling; only the shutdown notice still goes out
+    private volatile boolean closed;
+
+    public EventRelay(List<Endpoint> endpoints, List<WsSender> senders) {
+        if (endpoints.size() != senders.size()) throw new IllegalArgumentException("endpoints and senders differ in size");
+        this.endpoints = endpoints.toArray(new Endpoint[0]);
+        this.senders = senders.toArray(new WsSender[0]);
+    }
+
+    public List<WsSender> senders() {
+        return List.of(this.senders);
+    }
+
+    // Stop relaying game events and messages; events already queued are still sent
+    public void close() {
+        this.closed = true;
+    }
+
+    // Send a captured event; completes with true once every endpoint that accepted it has it, or if none did
+    public CompletableFuture<Boolean> send(GameEvent event) {
+        if (this.closed) return CompletableFuture.completedFuture(false);
+        int matches = 0;
+        int last = -1;
+        for (int i = 0; i < this.endpoints.length; i++) {
+            if (this.endpoints[i].accepts(event)) {
+                matches++;
+                last = i;
+            }
+        }
+        if (matches == 0) return CompletableFuture.completedFuture(true);
+        if (matches == 1) return this.senders[last].sendEventAsync(event);
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(matches);
+        for (int i = 0; i < this.endpoints.length; i++) {
+            if (this.endpoints[i].accepts(event)) results.add(this.senders[i].sendEventAsync(event));
+        }
+        return all(results);
+    }
+
+    // Chat digests carry no world, so only the event type filter applies
+    public CompletableFuture<Boolean> sendPlayerChatAsync(String name, String message) {
+        if (this.closed) return CompletableFuture.completedFuture(false);
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(this.senders.length);
+        for (int i = 0; i < this.endpoints.length; i++) {
+            if (this.endpoints[i].accepts("player_chat")) results.add(this.senders[i].sendPlayerChatAsync(name, message));
+        }
+        return all(results);
+    }
+
+    // A message typed with /qq succeeds only if every bot that takes messages answered
+    public CompletableFuture<Boolean> sendSynchronousMessageAsync(String message) {
+        if (this.closed) return CompletableFuture.completedFuture(false);
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(this.senders.length);
+        for (int i = 0; i < this.endpoints.length; i++) {
+            if (this.endpoints[i].accepts("message")) results.add(this.senders[i].sendSynchronousMessageAsync(message));
+        }
+        if (results.isEmpty()) return CompletableFuture.completedFuture(false);
+        return all(results);
+    }
+
+    // Each endpoint gets the startup notice as soon as its connection first opens, ahead of events held until then
+    public void sendServerStartupOnOpen() {
+        for (int i = 0; i < this.endpoints.length; i++) {
+            if (this.endpoints[i].accepts("server_startup")) this.senders[i].sendServerStartupOnOpen();
+        }
+    }
+
+    public CompletableFuture<Boolean> sendServerShutdownAsync() {
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(this.senders.length);
+        for (int i = 0; i < this.endpoints.length; i++) {
+            if (this.endpoints[i].accepts("server_shutdown")) results.add(this.senders[i].sendServerShutdownAsync());
+        }
+        return all(results);
+    }
+
+    private static CompletableFuture<Boolean> all(List<CompletableFuture<Boolean>> results) {
+        if (results.size() == 1) return results.get(0);
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            for (CompletableFuture<Boolean> result : results) {
+                if (!result.join()) return false;
+            }
+            return true;
+        });
+    }
+}
@@ -0,0 +1,109 @@
+package org.lonelysail.qqbot.websocket;
+
+import org.bukkit.configuration.Configuration;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.PingFrame;
+import org.lonelysail.qqbot.metrics.Metrics;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+// Application-level keepalive for one connection. Every interval a ping carrying its send time goes out and the
+// bot's pong echoes it back, giving a round-trip sample. A socket silently dropped by a NAT still looks open, so
+// after max_missed pings in a row without a pong the connection is closed, which makes the supervisor reconnect.
+// The library answers pings itself, so the round trip measures the network only; response timeouts follow the
+// events' own round trips instead (see ResponseTimeout). A ping can also carry a position that its pong confirms,
+// which the sender uses to learn how much of its outbox the bot has received.
+final class Heartbeat {
+    private static final int PAYLOAD = 2 * Long.BYTES;
+
+    private final Logger logger;
+    private final String tag;
+    private final WebSocketClient client;
+    private final Metrics metrics;
+    private final long interval;
+    private final int maxMissed;
+
+    private int outstanding;
+    private ScheduledFuture<?> task;
+    private volatile LongSupplier position = () -> 0;
+    private volatile LongConsumer confirmed = ignored -> {
+    };
+
+    Heartbeat(Logger logger, String tag, WebSocketClient client, Configuration config, Metrics metrics) {
+        this.logger = logger;
+        this.tag = tag;
+        this.client = client;
+        this.metrics = metrics;
+        this.interval = config.getLong("heartbeat.interval", 15000);
+        this.maxMissed = Math.max(1, config.getInt("heartbeat.max_missed", 3));
+        // The library's own check would ping as well and drop the socket on its own schedule
+        if (this.interval > 0) client.setConnectionLostTimeout(0);
+    }
+
+    // Each ping carries position.getAsLong() as read when it is sent; confirmed gets it back with the pong
+    void track(LongSupplier position, LongConsumer confirmed) {
+        this.position = position;
+        this.confirmed = confirmed;
+    }
+
+    // Called when the connection opens; pings run on the supervisor's threads
+    synchronized void start(ScheduledExecutorService executor) {
+        this.outstanding = 0;
+        if (this.interval <= 0 || (this.task != null && !this.task.isDone())) return;
+        this.task = executor.scheduleAtFixedRate(this::beat, this.interval, this.interval, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (this.task != null) this.task.cancel(false);
+        this.task = null;
+    }
+
+    private void beat() {
+        if (!this.client.isOpen()) return;
+        synchronized (this) {
+            if (this.outstanding >= this.maxMissed) {
+                this.stop();
+            } else {
+                if (this.outstanding > 0) this.metrics.heartbeatMisses.increment();
+                this.outstanding++;
+                this.ping();
+                return;
+            }
+        }
+        this.metrics.heartbeatTimeouts.increment();
+        this.logger.warning(this.tag + "连续 " + this.maxMissed + " 次没有收到心跳回应，连接可能已断开，正在重新连接。");
+        // Reports the close to the client's onClose, which hands the link back to the supervisor
+        this.client.closeConnection(CloseFrame.ABNORMAL_CLOSE, "心跳超时");
+    }
+
+    private void ping() {
+        PingFrame ping = new PingFrame();
+        // Read before sending, so everything written up to the position is ahead of the ping on the socket
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD).putLong(0, System.nanoTime()).putLong(Long.BYTES, this.position.getAsLong());
+        ping.setPayload(payload);
+        try {
+            this.client.sendFrame(ping);
+        } catch (RuntimeException e) {
+            this.logger.fine(this.tag + "发送心跳失败：" + e.getMessage());
+        }
+    }
+
+    // Called from the client's onWebsocketPong; pongs not answering one of our pings are ignored
+    void pong(ByteBuffer payload) {
+        if (payload == null || payload.remaining() != PAYLOAD) return;
+        long rtt = System.nanoTime() - payload.getLong(payload.position());
+        if (rtt < 0) return;
+        this.metrics.heartbeatRtt.record(rtt);
+        synchronized (this) {
+            this.outstanding = 0;
+        }
+        this.confirmed.accept(payload.getLong(payload.position() + Long.BYTES));
+    }
+}
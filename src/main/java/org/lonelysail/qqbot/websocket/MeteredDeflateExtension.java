@@ -0,0 +1,139 @@
+package org.lonelysail.qqbot.websocket;
+
+import org.bukkit.configuration.Configuration;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.extensions.ExtensionRequestData;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.ContinuousFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.FramedataImpl1;
+import org.lonelysail.qqbot.metrics.Metrics;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+// permessage-deflate (RFC 7692) for the client side of the bot connections.
+// Messages smaller than the threshold go out uncompressed. The deflater keeps its window between messages
+// unless the bot asks for client_no_context_takeover, so repeated keys and player names compress well.
+// The library compresses a frame before taking its write lock, so callers must serialise sends themselves
+// (see WsSender.send / WsListener.send); otherwise frames could reach the socket out of deflater order.
+public class MeteredDeflateExtension extends PerMessageDeflateExtension {
+    private static final String NAME = "permessage-deflate";
+    private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+
+    private final int threshold;
+    private final int level;
+    private final boolean contextTakeover;
+    private final Metrics metrics;
+
+    // Set from the bot's handshake response
+    private boolean resetAfterMessage;
+    // Whether the message currently being written is compressed, for its continuation frames
+    private boolean compressing;
+    // Output buffer reused for every message; the library copies the payload into its own frame buffer
+    private byte[] output = new byte[4096];
+
+    public MeteredDeflateExtension(int threshold, int level, boolean contextTakeover, Metrics metrics) {
+        this.threshold = threshold;
+        this.level = level;
+        this.contextTakeover = contextTakeover;
+        this.metrics = metrics;
+        this.resetAfterMessage = !contextTakeover;
+        this.getDeflater().end();
+        this.setDeflater(new Deflater(level, true));
+        this.setThreshold(threshold);
+    }
+
+    // Handshake draft for a bot connection; plain RFC 6455 when compression is turned off
+    public static Draft draft(Configuration config, Metrics metrics) {
+        if (!config.getBoolean("compression.enabled", true)) return new Draft_6455();
+        int level = Math.min(Deflater.BEST_COMPRESSION, Math.max(Deflater.BEST_SPEED, config.getInt("compression.level", 6)));
+        return new Draft_6455(new MeteredDeflateExtension(Math.max(0, config.getInt("compression.threshold", 256)), level,
+                config.getBoolean("compression.context_takeover", true), metrics));
+    }
+
+    @Override
+    public String getProvidedExtensionAsClient() {
+        return this.contextTakeover ? NAME : NAME + "; " + CLIENT_NO_CONTEXT_TAKEOVER;
+    }
+
+    @Override
+    public boolean acceptProvidedExtensionAsClient(String inputExtension) {
+        for (String offer : inputExtension.split(",")) {
+            ExtensionRequestData data = ExtensionRequestData.parseExtensionRequest(offer);
+            if (!NAME.equalsIgnoreCase(data.getExtensionName())) continue;
+            if (data.getExtensionParameters().containsKey(CLIENT_NO_CONTEXT_TAKEOVER)) this.resetAfterMessage = true;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void encodeFrame(Framedata frame) {
+        if (!(frame instanceof DataFrame data)) return;
+        ByteBuffer payload = frame.getPayloadData();
+        if (!(frame instanceof ContinuousFrame)) {
+            this.compressing = payload.remaining() >= this.threshold;
+            if (!this.compressing) {
+                this.metrics.deflateSkipped.increment();
+                return;
+            }
+            data.setRSV1(true);
+        } else if (!this.compressing) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int raw = payload.remaining();
+        Deflater deflater = this.getDeflater();
+        deflater.setInput(payload);
+        // A sync flush that leaves room in the buffer has written everything
+        int length = 0;
+        while (true) {
+            length += deflater.deflate(this.output, length, this.output.length - length, Deflater.SYNC_FLUSH);
+            if (length < this.output.length) break;
+            this.output = Arrays.copyOf(this.output, this.output.length * 2);
+        }
+        if (frame.isFin()) {
+            // The trailing 00 00 ff ff of the last flush is implied by the end of the message
+            if (length >= 4 && this.output[length - 4] == 0 && this.output[length - 3] == 0
+                    && this.output[length - 2] == (byte) 0xff && this.output[length - 1] == (byte) 0xff) length -= 4;
+            if (this.resetAfterMessage) deflater.reset();
+        }
+        data.setPayload(ByteBuffer.wrap(this.output, 0, length));
+
+        this.metrics.deflateTime.record(System.nanoTime() - start);
+        this.metrics.deflateBytesIn.add(raw);
+        this.metrics.deflateBytesOut.add(length);
+    }
+
+    @Override
+    public void decodeFrame(Framedata frame) throws InvalidDataException {
+        if (!(frame instanceof FramedataImpl1) || !frame.isRSV1()) {
+            super.decodeFrame(frame);
+            return;
+        }
+        long start = System.nanoTime();
+        int compressed = frame.getPayloadData().remaining();
+        super.decodeFrame(frame);
+        this.metrics.inflateTime.record(System.nanoTime() - start);
+        this.metrics.inflateBytesIn.add(compressed);
+        this.metrics.inflateBytesOut.add(frame.getPayloadData().remaining());
+    }
+
+    // Every connection, including each reconnect, gets a fresh deflater and negotiation state
+    @Override
+    public IExtension copyInstance() {
+        return new MeteredDeflateExtension(this.threshold, this.level, this.contextTakeover, this.metrics);
+    }
+
+    @Override
+    public String toString() {
+        return "MeteredDeflateExtension{threshold=" + this.threshold + ", level=" + this.level + ", contextTakeover=" + this.contextTakeover + "}";
+    }
+}
@@ -0,0 +1,25 @@
+package org.lonelysail.qqbot.websocket;
+
+import org.lonelysail.qqbot.websocket.codec.EventMessage;
+
+import java.util.concurrent.CompletableFuture;
+
+// An event waiting in the outbound queue to be written to the bot
+public class OutboundEvent {
+    public final EventMessage message;
+    // Completed with the bot's response, or with true once written when no response is expected
+    public final CompletableFuture<Boolean> result = new CompletableFuture<>();
+    public final boolean waitResponse;
+    // Durable events are kept in the outbox until delivered, even across disconnects and restarts
+    public final boolean durable;
+    // When the event was queued, for round-trip latency
+    public final long createdAt = System.nanoTime();
+    // Outbox position its response confirms, set by the writer thread before sending; 0 without an outbox
+    volatile long outboxPosition;
+
+    public OutboundEvent(long id, String type, Object data, boolean waitResponse, boolean durable) {
+        this.message = new EventMessage(id, type, data);
+        this.waitResponse = waitResponse;
+        this.durable = durable;
+    }
+}
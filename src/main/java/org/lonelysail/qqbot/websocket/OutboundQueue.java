@@ -0,0 +1,154 @@
+package org.lonelysail.qqbot.websocket;
+
+import org.bukkit.configuration.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Bounded queue of outbound events drained by a single writer thread.
+// An event finding the queue otherwise empty is handed to the sink at once. When more are waiting, those arriving
+// within the batch window are handed over together so they can share one frame.
+// When no event arrives for the idle interval the idle task runs on the writer thread instead.
+public class OutboundQueue {
+    public enum OverflowPolicy { DROP_OLDEST, BLOCK }
+
+    // Queued by stop() behind everything already accepted; the writer exits when it reaches it
+    private static final OutboundEvent CLOSE = new OutboundEvent(0, "close", null, false, false);
+
+    private final ArrayBlockingQueue<OutboundEvent> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final long batchWindowNanos;
+    private final int batchSize;
+    private final Consumer<List<OutboundEvent>> sink;
+    private final Runnable idle;
+    private final long idleNanos;
+    private final Logger logger;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile boolean accepting = true;
+
+    public OutboundQueue(Logger logger, Configuration config, Consumer<List<OutboundEvent>> sink, Runnable idle, long idleMillis) {
+        this.logger = logger;
+        this.sink = sink;
+        this.idle = idle;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, idleMillis));
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, config.getInt("queue.capacity", 1024)));
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getLong("queue.batch_window", 50)));
+        this.batchSize = Math.max(1, config.getInt("queue.batch_size", 64));
+        this.overflowPolicy = "block".equalsIgnoreCase(config.getString("queue.overflow", "drop_oldest"))
+                ? OverflowPolicy.BLOCK : OverflowPolicy.DROP_OLDEST;
+
+        this.writer = new Thread(this::drain, "QQBot-Writer");
+        this.writer.setDaemon(true);
+    }
+
+    public void start() {
+        this.writer.start();
+    }
+
+    // Stop taking events and let the writer send what is already queued until the deadline (System.nanoTime);
+    // after that the writer is interrupted and events still queued are failed
+    public void stop(long deadline) {
+        this.accepting = false;
+        try {
+            this.queue.offer(CLOSE, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            this.writer.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.writer.isAlive()) {
+            this.logger.warning("[Sender] 发送队列未能在限定时间内发送完毕，" + this.queue.size() + " 条事件未发送。");
+            this.running = false;
+            this.writer.interrupt();
+            try {
+                this.writer.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        OutboundEvent event;
+        while ((event = this.queue.poll()) != null) event.result.complete(false);
+    }
+
+    // Queue an event for the writer thread, applying the overflow policy when full
+    public boolean offer(OutboundEvent event) {
+        if (!this.accepting) return false;
+        if (this.overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                this.queue.put(event);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        while (!this.queue.offer(event)) {
+            OutboundEvent oldest = this.queue.poll();
+            if (oldest != null) {
+                oldest.result.complete(false);
+                if (this.dropped.incrementAndGet() % 100 == 1) {
+                    this.logger.warning("[Sender] 发送队列已满，已丢弃 " + this.dropped.get() + " 条事件！");
+                }
+            }
+        }
+        return true;
+    }
+
+    public int depth() {
+        return this.queue.size();
+    }
+
+    public long droppedCount() {
+        return this.dropped.get();
+    }
+
+    private void drain() {
+        List<OutboundEvent> batch = new ArrayList<>(this.batchSize);
+        boolean closing = false;
+        while (this.running && !closing) {
+            try {
+                OutboundEvent first = this.queue.poll(this.idleNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    this.idle.run();
+                    continue;
+                }
+                if (first == CLOSE) break;
+                batch.add(first);
+                // Keep collecting until the window closes or the batch is full; a lone event does not wait
+                boolean backlog = !this.queue.isEmpty();
+                long deadline = System.nanoTime() + this.batchWindowNanos;
+                while (backlog && batch.size() < this.batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    OutboundEvent next = remaining > 0 ? this.queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        this.queue.drainTo(batch, this.batchSize - batch.size());
+                        break;
+                    }
+                    if (next == CLOSE) {
+                        closing = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // drainTo may have taken the close marker too
+                if (batch.remove(CLOSE)) closing = true;
+                if (!batch.isEmpty()) this.sink.accept(batch);
+            } catch (InterruptedException e) {
+                for (OutboundEvent event : batch) event.result.complete(false);
+                break;
+            } catch (RuntimeException e) {
+                this.logger.warning("[Sender] 发送事件时发生错误：" + e.getMessage());
+                for (OutboundEvent event : batch) event.result.complete(false);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+}
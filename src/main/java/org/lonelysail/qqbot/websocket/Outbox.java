@@ -0,0 +1,201 @@
+package org.lonelysail.qqbot.websocket;
+
+import org.bukkit.configuration.Configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Append-only, memory-mapped outbox holding events that have not been delivered to the bot yet.
+// Records are stored as [int length][payload] in fixed-size segment files; a zero length marks the end
+// of a segment. Positions are global offsets (segment id * segment size + offset), and the cursor file
+// stores the position of the first record the bot has not confirmed yet. Only the writer thread touches an outbox.
+public class Outbox {
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Logger logger;
+    private final File directory;
+    private final long maxSize;
+    private final long syncIntervalNanos;
+    private final int segmentSize;
+
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private final MappedByteBuffer cursor;
+    private long readPosition;
+    private long writePosition;
+
+    private boolean dirty;
+    private long lastSync = System.nanoTime();
+
+    public Outbox(Logger logger, File directory, Configuration config) throws IOException {
+        this.logger = logger;
+        this.directory = directory;
+        this.maxSize = config.getLong("outbox.max_size", 64L * 1024 * 1024);
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("outbox.sync_interval", 1000));
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("无法创建目录 " + directory);
+
+        // The cursor file keeps [read position][segment size]; segments written with another size stay readable
+        this.cursor = map(new File(directory, "cursor"), 16);
+        int storedSize = (int) this.cursor.getLong(8);
+        this.segmentSize = storedSize > 0 ? storedSize : Math.max(4096, config.getInt("outbox.segment_size", 1024 * 1024));
+        this.cursor.putLong(8, this.segmentSize);
+        this.readPosition = this.cursor.getLong(0);
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                long id = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+                // Segments before the cursor were delivered in an earlier run
+                if (id < this.readPosition / this.segmentSize) delete(file);
+                else this.segments.put(id, map(file, this.segmentSize));
+            }
+        }
+
+        if (this.segments.isEmpty()) {
+            this.writePosition = this.readPosition;
+        } else {
+            this.readPosition = Math.max(this.readPosition, this.segments.firstKey() * this.segmentSize);
+            long last = this.segments.lastKey();
+            this.writePosition = last * this.segmentSize + this.endOf(this.segments.get(last));
+        }
+        if (this.hasBacklog()) this.logger.info("[Outbox] 发现 " + this.segments.size() + " 个未发送完的事件分段，将在连接后补发。");
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private void delete(File file) {
+        // On Windows a file cannot be deleted while still mapped; it is cleaned up on the next load instead
+        if (!file.delete()) this.logger.fine("[Outbox] 暂时无法删除 " + file.getName());
+    }
+
+    private File segmentFile(long id) {
+        return new File(this.directory, String.format("%016d%s", id, SEGMENT_SUFFIX));
+    }
+
+    // Offset just past the last record in a segment
+    private int endOf(MappedByteBuffer buffer) {
+        int offset = 0;
+        int length;
+        while (offset + 4 <= this.segmentSize && (length = buffer.getInt(offset)) > 0) offset += 4 + length;
+        return offset;
+    }
+
+    public boolean hasBacklog() {
+        return this.readPosition < this.writePosition;
+    }
+
+    public long writePosition() {
+        return this.writePosition;
+    }
+
+    public void append(byte[] record) throws IOException {
+        int needed = record.length + 4;
+        if (needed > this.segmentSize) {
+            this.logger.warning("[Outbox] 事件大小超过分段大小，无法保存！");
+            return;
+        }
+        long id = this.writePosition / this.segmentSize;
+        int offset = (int) (this.writePosition % this.segmentSize);
+        if (offset + needed > this.segmentSize) {
+            // Rotate: flush the full segment once and continue in a fresh one
+            MappedByteBuffer full = this.segments.get(id);
+            if (full != null) full.force();
+            id++;
+            offset = 0;
+            this.writePosition = id * this.segmentSize;
+        }
+        MappedByteBuffer buffer = this.segments.get(id);
+        if (buffer == null) {
+            buffer = map(this.segmentFile(id), this.segmentSize);
+            this.segments.put(id, buffer);
+            this.enforceCap(id);
+        }
+        // Payload first, length last: a record torn by a crash reads as the end of the segment
+        buffer.put(offset + 4, record);
+        buffer.putInt(offset, record.length);
+        this.writePosition += needed;
+        this.dirty = true;
+    }
+
+    // Drop the oldest segments, delivered or not, once the outbox grows past its size cap
+    private void enforceCap(long current) {
+        while ((long) this.segments.size() * this.segmentSize > this.maxSize && this.segments.firstKey() != current) {
+            long oldest = this.segments.pollFirstEntry().getKey();
+            this.delete(this.segmentFile(oldest));
+            long next = (oldest + 1) * this.segmentSize;
+            if (this.readPosition < next) {
+                this.logger.warning("[Outbox] 未发送的事件超过 outbox.max_size，已丢弃最旧的一个分段！");
+                this.commit(next);
+            }
+        }
+    }
+
+    // Position of the first record not yet confirmed as delivered
+    public long readPosition() {
+        return this.readPosition;
+    }
+
+    // Read up to max undelivered records from position from (or the first undelivered one) up to limit;
+    // returns the position just past them
+    public long read(long from, long limit, int max, List<byte[]> out) {
+        long position = Math.max(from, this.readPosition);
+        while (position < limit && out.size() < max) {
+            long id = position / this.segmentSize;
+            int offset = (int) (position % this.segmentSize);
+            MappedByteBuffer buffer = this.segments.get(id);
+            if (buffer == null) {
+                Long next = this.segments.ceilingKey(id + 1);
+                if (next == null) return limit;
+                position = next * this.segmentSize;
+                continue;
+            }
+            int length = offset + 4 <= this.segmentSize ? buffer.getInt(offset) : 0;
+            if (length <= 0) {
+                position = (id + 1) * this.segmentSize;
+                continue;
+            }
+            byte[] record = new byte[length];
+            buffer.get(offset + 4, record);
+            out.add(record);
+            position += 4 + length;
+        }
+        return Math.min(position, this.writePosition);
+    }
+
+    // Mark everything before position as delivered and release fully delivered segments
+    public void commit(long position) {
+        if (position <= this.readPosition) return;
+        this.readPosition = position;
+        this.cursor.putLong(0, position);
+        this.dirty = true;
+        long current = this.writePosition / this.segmentSize;
+        while (!this.segments.isEmpty() && this.segments.firstKey() < position / this.segmentSize && this.segments.firstKey() < current) {
+            this.delete(this.segmentFile(this.segments.pollFirstEntry().getKey()));
+        }
+    }
+
+    // Called regularly by the writer thread so disk syncs are batched instead of done per event
+    public void maybeSync() {
+        if (this.dirty && System.nanoTime() - this.lastSync >= this.syncIntervalNanos) this.sync();
+    }
+
+    public void sync() {
+        if (!this.dirty) return;
+        MappedByteBuffer current = this.segments.get(this.writePosition / this.segmentSize);
+        if (current != null) current.force();
+        this.cursor.force();
+        this.dirty = false;
+        this.lastSync = System.nanoTime();
+    }
+}
@@ -0,0 +1,101 @@
+package org.lonelysail.qqbot.websocket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// Holds outgoing events back until the connection has opened for the first time, so events fired while the
+// plugin is still connecting are neither dropped nor failed fast. The gate also opens after a timeout, after
+// which events take the normal path (outbox or fail fast). Holds at most capacity events, dropping the oldest.
+final class ReadinessGate {
+    private final ArrayDeque<OutboundEvent> held = new ArrayDeque<>();
+    private final int capacity;
+    private final Predicate<OutboundEvent> release;
+    private final CompletableFuture<Void> opened = new CompletableFuture<>();
+    // Only set once every held event has been released, so nothing can overtake them
+    private volatile boolean open;
+    // Set while open() releases the held events outside the monitor; events arriving meanwhile are still held
+    private boolean draining;
+    private Runnable ahead;
+    private long dropped;
+
+    ReadinessGate(int capacity, long timeoutMillis, Predicate<OutboundEvent> release) {
+        this.capacity = Math.max(1, capacity);
+        this.release = release;
+        CompletableFuture.delayedExecutor(Math.max(0, timeoutMillis), TimeUnit.MILLISECONDS).execute(() -> this.open(null));
+    }
+
+    boolean isOpen() {
+        return this.open;
+    }
+
+    // Completes when the gate opens, either on the first connection or on timeout
+    CompletableFuture<Void> opened() {
+        return this.opened;
+    }
+
+    // Returns false once the gate is open; the caller then sends the event itself
+    boolean hold(OutboundEvent event) {
+        if (this.open) return false;
+        synchronized (this) {
+            if (this.open) return false;
+            if (this.held.size() == this.capacity) {
+                this.held.poll().result.complete(false);
+                this.dropped++;
+            }
+            this.held.add(event);
+            return true;
+        }
+    }
+
+    // Release the held events in order; first runs before them so it can queue something ahead.
+    // Returns false if the gate was already open, or opening and first is null.
+    boolean open(Runnable first) {
+        List<OutboundEvent> batch;
+        synchronized (this) {
+            if (this.open) return false;
+            if (this.draining) {
+                // Another thread is releasing; it runs first ahead of the events it has not released yet
+                if (first == null) return false;
+                this.ahead = first;
+                return true;
+            }
+            this.draining = true;
+            batch = this.takeHeld();
+        }
+        // Releasing may block on a full queue, so it happens outside the monitor that hold() needs
+        while (true) {
+            if (first != null) first.run();
+            for (OutboundEvent event : batch) {
+                if (!this.release.test(event)) event.result.complete(false);
+            }
+            // Events held while this batch went out follow it; the gate opens once nothing is left
+            synchronized (this) {
+                first = this.ahead;
+                this.ahead = null;
+                batch = this.takeHeld();
+                if (batch.isEmpty()) {
+                    this.draining = false;
+                    this.open = true;
+                    break;
+                }
+            }
+        }
+        if (first != null) first.run();
+        this.opened.complete(null);
+        return true;
+    }
+
+    private List<OutboundEvent> takeHeld() {
+        List<OutboundEvent> batch = new ArrayList<>(this.held);
+        this.held.clear();
+        return batch;
+    }
+
+    synchronized long droppedCount() {
+        return this.dropped;
+    }
+}
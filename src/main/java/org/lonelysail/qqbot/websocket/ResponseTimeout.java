@@ -0,0 +1,28 @@
+package org.lonelysail.qqbot.websocket;
+
+import org.bukkit.configuration.Configuration;
+import org.lonelysail.qqbot.metrics.Metrics;
+
+// How long to wait for the bot's response to an event. The bot answers message and player events only after
+// its own round trip through QQ, so the timeout follows the measured round trips of the same event type:
+// rtt_multiplier times their p99, never below min and never above max. Until a type has been answered once,
+// min applies, which defaults to the fixed five seconds used before.
+final class ResponseTimeout {
+    private final Metrics metrics;
+    private final long minMillis;
+    private final long maxMillis;
+    private final double multiplier;
+
+    ResponseTimeout(Configuration config, Metrics metrics) {
+        this.metrics = metrics;
+        this.minMillis = Math.max(1, config.getLong("response_timeout.min", 5000));
+        this.maxMillis = Math.max(this.minMillis, config.getLong("response_timeout.max", 15000));
+        this.multiplier = Math.max(0, config.getDouble("response_timeout.rtt_multiplier", 2));
+    }
+
+    long millis(String type) {
+        long p99 = this.metrics.roundTrip(type).quantile(0.99);
+        long adaptive = (long) (this.multiplier * p99 / 1e6);
+        return Math.min(this.maxMillis, Math.max(this.minMillis, adaptive));
+    }
+}
@@ -1,134 +1,179 @@
 package org.lonelysail.qqbot.websocket;
 
-import com.sun.management.OperatingSystemMXBean;
-import org.bukkit.Bukkit;
 import org.bukkit.Server;
 import org.bukkit.configuration.Configuration;
-import org.bukkit.entity.Player;
-import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.Plugin;
+import org.java_websocket.WebSocket;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ServerHandshake;
 import org.lonelysail.qqbot.Utils;
-
-import java.lang.management.ManagementFactory;
-import java.net.URI;
-import java.util.ArrayList;
+import org.lonelysail.qqbot.metrics.Metrics;
+import org.lonelysail.qqbot.server.MainThreadExecutor;
+import org.lonelysail.qqbot.websocket.codec.BroadcastMessage;
+import org.lonelysail.qqbot.websocket.codec.Codec;
+import org.lonelysail.qqbot.websocket.codec.Codecs;
+import org.lonelysail.qqbot.websocket.codec.EventMessage;
+import org.lonelysail.qqbot.websocket.codec.ResponseMessage;
+import org.lonelysail.qqbot.websocket.codec.WireMessage;
+import org.lonelysail.qqbot.websocket.rpc.RpcRegistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
-import java.util.List;
-import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 public class WsListener extends WebSocketClient {
     public boolean serverRunning = true;
     private final Logger logger;
     private final Server server;
-    private final JavaPlugin plugin;
+    private final Plugin plugin;
 
     private final Utils utils = new Utils();
-    private final OperatingSystemMXBean bean = ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
-
-    public WsListener(JavaPlugin plugin, Configuration config) {
-        super(URI.create(Objects.requireNonNull(config.getString("uri"))).resolve("websocket/minecraft"));
+    // 握手时协商的消息格式，机器人未响应时使用旧的 Base64 文本格式
+    private volatile Codec codec = Codecs.LEGACY;
+    private final ConnectionSupervisor.Link link;
+    // 日志前缀，多个机器人时带上连接的 id
+    private final String tag;
+    // 广播消息每个 tick 统一交给主线程
+    private final MainThreadExecutor mainThread;
+    // 机器人请求的处理器，所有连接共用，其他插件可以通过 ServicesManager 获取并注册自己的处理器
+    private final RpcRegistry rpc;
+    private final Metrics metrics;
+    // 响应在多个虚拟线程中发出，压缩与写入必须按同一顺序进行
+    private final Object sendLock = new Object();
+    // 定时发送心跳，连续多次没有回应时断开并重新连接
+    private final Heartbeat heartbeat;
+
+    public WsListener(Plugin plugin, Configuration config, Endpoint endpoint, ConnectionSupervisor supervisor,
+                      RpcRegistry rpc, MainThreadExecutor mainThread, Metrics metrics) {
+        super(endpoint.uri().resolve("websocket/minecraft"), MeteredDeflateExtension.draft(config, metrics), null, ConnectionSupervisor.connectTimeout(config));
         this.plugin = plugin;
         this.logger = plugin.getLogger();
         this.server = plugin.getServer();
+        this.tag = "[" + endpoint.label("Listener") + "] ";
+        this.mainThread = mainThread;
+        this.rpc = rpc;
+        this.metrics = metrics;
 
         // 添加请求头信息
         HashMap<String, String> headers = new HashMap<>();
-        headers.put("name", config.getString("name"));
-        headers.put("token", config.getString("token"));
+        headers.put("name", endpoint.name());
+        headers.put("token", endpoint.token());
         this.addHeader("type", "Spigot");
         this.addHeader("info", this.utils.encode(headers));
+        this.addHeader(Codecs.HEADER, Codecs.preferred(config.getString("codec", "json")).name());
+        this.heartbeat = new Heartbeat(this.logger, this.tag, this, config, metrics);
+        this.link = supervisor.supervise(endpoint.label("Listener"), this, this.heartbeat);
     }
 
-    // 处理命令请求
-    private String command(String data) {
-        Bukkit.getScheduler().runTask(this.plugin, () -> this.server.dispatchCommand(this.server.getConsoleSender(), data));
-        return "命令已发送到服务器！当前插件不支持获取命令返回值。";
+    public ConnectionSupervisor.Link getLink() {
+        return this.link;
     }
 
-    // 获取在线玩家列表
-    private List<String> playerList(String data) {
-        List<String> players = new ArrayList<>();
-        for (Player player : this.server.getOnlinePlayers()) players.add(player.getName());
-        return players;
+    // 开启 permessage-deflate 时，库在取得写锁之前就压缩了帧，这里让压缩与写入一起完成，保证帧的顺序与压缩顺序一致
+    @Override
+    public void send(ByteBuffer bytes) {
+        synchronized (this.sendLock) {
+            super.send(bytes);
+        }
     }
 
-    // 获取服务器CPU和内存占用
-    private List<Double> serverOccupation(String data) {
-        Runtime runtime = Runtime.getRuntime();
-        List<Double> serverOccupations = new ArrayList<>();
-        long freeMemory = runtime.freeMemory();
-        long totalMemory = runtime.totalMemory();
-        serverOccupations.add(this.bean.getProcessCpuLoad() * 100);
-        serverOccupations.add(((double) ((totalMemory - freeMemory)) / totalMemory) * 100);
-        return serverOccupations;
+    @Override
+    public void send(String text) {
+        synchronized (this.sendLock) {
+            super.send(text);
+        }
     }
 
     @Override
     public void onOpen(ServerHandshake serverHandshake) {
-        this.logger.info("[Listener] 与机器人成功建立连接！");
+        this.codec = Codecs.negotiated(serverHandshake.getFieldValue(Codecs.HEADER));
+        this.logger.info(this.tag + "与机器人成功建立连接！");
+        this.link.connectionOpened();
+    }
+
+    @Override
+    public void onWebsocketPong(WebSocket conn, Framedata frame) {
+        this.heartbeat.pong(frame.getPayloadData());
     }
 
     @Override
     public void onMessage(String message) {
-        HashMap<String, ?> map = this.utils.decode(message);
-        Object data = map.get("data");
-        String eventType = (String) map.get("type");
-        this.logger.fine("收到消息机器人消息 " + map);
-
-        HashMap<String, Object> responseMessage = new HashMap<>();
-        Object response;
-
-        switch (eventType) {
-            case "message":
-                String broadcastMessage = this.utils.toStringMessage((List) data);
-                this.server.broadcastMessage(broadcastMessage);
-                this.logger.fine("[Listener] 收到广播消息 " + broadcastMessage);
-                return;
-
-            case "command":
-                // 如果事件类型是"command"，则调用command方法处理
-                response = this.command((String) data);
-                break;
-
-            case "player_list":
-                // 如果事件类型是"player_list"，则调用playerList方法处理
-                response = this.playerList((String) data);
-                break;
-
-            case "server_occupation":
-                // 如果事件类型是"server_occupation"，则调用serverOccupation方法处理
-                response = this.serverOccupation((String) data);
-                break;
-
-            default:
-                // 如果事件类型未知，则记录警告信息并返回失败响应
-                this.logger.warning("[Listener] 未知的事件类型: " + eventType);
-                responseMessage.put("success", false);
-                this.send(this.utils.encode(responseMessage));
-                return;
+        try {
+            this.metrics.framesIn.increment();
+            this.metrics.bytesIn.add(message.length());
+            long start = System.nanoTime();
+            WireMessage decoded = this.codec.decode(message);
+            this.metrics.decodeTime.record(System.nanoTime() - start);
+            this.handle(decoded, this::reply);
+        } catch (IOException | RuntimeException e) {
+            this.logger.warning(this.tag + "无法解析机器人的消息：" + e.getMessage());
         }
+    }
 
-        responseMessage.put("success", true);
-        responseMessage.put("data", response);
-        this.logger.fine("发送响应消息 " + responseMessage);
-        // 构造成功响应并发送
-        this.send(this.utils.encode(responseMessage));
+    @Override
+    public void onMessage(ByteBuffer message) {
+        try {
+            this.metrics.framesIn.increment();
+            this.metrics.bytesIn.add(message.remaining());
+            long start = System.nanoTime();
+            WireMessage decoded = this.codec.decode(message);
+            this.metrics.decodeTime.record(System.nanoTime() - start);
+            this.handle(decoded, this::reply);
+        } catch (IOException | RuntimeException e) {
+            this.logger.warning(this.tag + "无法解析机器人的消息：" + e.getMessage());
+        }
+    }
+
+    private void reply(ResponseMessage response) {
+        long start = System.nanoTime();
+        int bytes = this.codec.send(this, response);
+        this.metrics.encodeTime.record(System.nanoTime() - start);
+        this.metrics.framesOut.increment();
+        this.metrics.bytesOut.add(bytes);
+    }
+
+    // 处理机器人的请求，响应通过 reply 发回；单连接模式下由 WsSender 转交
+    void handle(WireMessage message, Consumer<ResponseMessage> reply) {
+        this.logger.fine("收到消息机器人消息 " + message);
+
+        if (message instanceof BroadcastMessage broadcast) {
+            String broadcastMessage = this.utils.toStringMessage(broadcast.sections());
+            this.mainThread.execute(() -> this.server.broadcastMessage(broadcastMessage));
+            this.logger.fine(this.tag + "收到广播消息 " + broadcastMessage);
+            return;
+        }
+        if (!(message instanceof EventMessage request)) {
+            this.logger.warning(this.tag + "收到无法处理的消息: " + message);
+            return;
+        }
+
+        // 请求交给注册表中对应的处理器，在虚拟线程中执行
+        this.rpc.dispatch(request, response -> {
+            this.logger.fine("发送响应消息 " + response);
+            reply.accept(response);
+        });
+    }
+
+    // 关闭连接，最多等待到 deadline（System.nanoTime），之后不再重连
+    public void shutdown(long deadline) throws InterruptedException {
+        this.serverRunning = false;
+        ConnectionSupervisor.close(this, deadline);
     }
 
     @Override
     public void onClose(int code, String reason, boolean remote) {
-        this.logger.warning("[Listener] 与机器人的链接已关闭！");
-        if (this.serverRunning) {
-            this.logger.info("[Listener] 正在尝试重新链接……");
-            Bukkit.getScheduler().runTaskLater(this.plugin, this::reconnect, 100);
-        }
+        this.logger.warning(this.tag + "与机器人的链接已关闭！");
+        // 关闭期间也要交给 supervisor，停止心跳并结束未完成的连接尝试；supervisor 已停止时不会重连
+        if (this.serverRunning) this.logger.info(this.tag + "正在尝试重新链接……");
+        this.link.connectionLost();
     }
 
     @Override
     public void onError(Exception ex) {
-        this.logger.warning("[Listener] 机器人连接发生 " + ex.getMessage() + " 错误！");
+        this.logger.warning(this.tag + "机器人连接发生 " + ex.getMessage() + " 错误！");
         ex.printStackTrace();
     }
 }
@@ -1,39 +1,184 @@
 package org.lonelysail.qqbot.websocket;
 
 import org.bukkit.configuration.Configuration;
-import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.Plugin;
+import org.java_websocket.WebSocket;
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ServerHandshake;
 import org.lonelysail.qqbot.Utils;
+import org.lonelysail.qqbot.metrics.Metrics;
+import org.lonelysail.qqbot.server.GameEvent;
+import org.lonelysail.qqbot.websocket.codec.Codec;
+import org.lonelysail.qqbot.websocket.codec.Codecs;
+import org.lonelysail.qqbot.websocket.codec.Envelope;
+import org.lonelysail.qqbot.websocket.codec.EventMessage;
+import org.lonelysail.qqbot.websocket.codec.JsonWire;
+import org.lonelysail.qqbot.websocket.codec.ResponseMessage;
+import org.lonelysail.qqbot.websocket.codec.WireMessage;
 import org.slf4j.LoggerFactory;
 
-import java.net.URI;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 public class WsSender extends WebSocketClient {
+    // Channel tags used when both directions share one socket
+    public static final String BOT_CHANNEL = "bot";
+    public static final String MINECRAFT_CHANNEL = "minecraft";
+
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(WsSender.class);
-    private String message;
     private final Logger logger;
     private final Utils utils = new Utils();
-    private final Lock lock = new ReentrantLock();
-    private final Condition condition = lock.newCondition();
-    private final JavaPlugin plugin;
+    private final Plugin plugin;
+
+    // Requests waiting for a reply, keyed by the id carried in the outgoing frame.
+    // Ordered so that replies from bots which do not echo the id can still be
+    // matched to the oldest outstanding request.
+    private final ConcurrentSkipListMap<Long, OutboundEvent> pending = new ConcurrentSkipListMap<>();
+    private final AtomicLong requestId = new AtomicLong();
+    private final OutboundQueue queue;
+    // Null when the outbox is disabled or could not be opened
+    private final Outbox outbox;
+    // Outbox position up to which records have been written to the current connection; set by the writer thread.
+    // Records stay in the outbox until the bot confirms them, by answering a later event or a heartbeat ping.
+    private volatile long sentPosition;
+    private volatile boolean resend;
+    private final AtomicLong confirmed = new AtomicLong();
+    // Replayed records go out with this id, since their original ids may belong to live requests by now
+    // (ids restart with the plugin) and nobody waits for them any more
+    static final long REPLAYED_ID = -1;
+    // When the replies to replayed events stop being expected, oldest first; bots that do not echo ids answer
+    // them ahead of newer requests, and those replies must not complete the newer requests
+    private final ArrayDeque<Long> replayReplies = new ArrayDeque<>();
+    // Event types the bot does not answer. They are sent without waiting for a response, and replaying one
+    // expects no reply either, so live and replayed events agree on which replies are coming.
+    // This is part of the protocol: a reply without an id is matched to the oldest outstanding request, so a bot
+    // that does not echo ids must never answer these. Replies that carry an id are checked against the pending
+    // table, so a reply to one of these from a bot that echoes ids is simply discarded.
+    private static final Set<String> FIRE_AND_FORGET = Set.of("player_chat");
+    // Chosen during the handshake; legacy Base64 text frames until the bot accepts something better
+    private volatile Codec codec = Codecs.LEGACY;
+    // Reused by the writer thread for batch frames
+    private final List<EventMessage> batchMessages = new ArrayList<>();
+
+    // In single-connection mode this socket also carries the listener's traffic, tagged by channel
+    private final boolean multiplexed;
+    private final String channel;
+    private volatile WsListener listener;
+    private final ConnectionSupervisor.Link link;
+    private final Metrics metrics;
+    // Log prefix; carries the endpoint id when several bots are configured
+    private final String tag;
+    // Writer thread and multiplexed listener replies both send on this socket
+    private final Object sendLock = new Object();
+    // Events sent before the first connection wait here instead of failing
+    private final ReadinessGate gate;
+    private final AtomicBoolean firstOpen = new AtomicBoolean();
+    private volatile boolean announceStartup;
+    // Detects a dead connection
+    private final Heartbeat heartbeat;
+    private final ResponseTimeout responseTimeout;
 
-    // Constructor with configuration and plugin
-    public WsSender(JavaPlugin plugin, Configuration config) {
-        super(URI.create(Objects.requireNonNull(config.getString("uri"))).resolve("websocket/bot"));
+    // Constructor with configuration, plugin and the bot endpoint this sender connects to
+    public WsSender(Plugin plugin, Configuration config, Endpoint endpoint, ConnectionSupervisor supervisor, Metrics metrics) {
+        super(endpoint.uri().resolve(path(config)), MeteredDeflateExtension.draft(config, metrics), null, ConnectionSupervisor.connectTimeout(config));
         this.plugin = plugin;
         this.logger = plugin.getLogger();
+        this.tag = "[" + endpoint.label("Sender") + "] ";
+        this.multiplexed = isMultiplexed(config);
+        this.channel = this.multiplexed ? BOT_CHANNEL : null;
         HashMap<String, String> headers = new HashMap<>();
-        headers.put("name", config.getString("name"));
-        headers.put("token", config.getString("token"));
+        headers.put("name", endpoint.name());
+        headers.put("token", endpoint.token());
+        if (this.multiplexed) this.addHeader("type", "Spigot");
         this.addHeader("info", this.utils.encode(headers));
+        this.addHeader(Codecs.HEADER, Codecs.preferred(config.getString("codec", "json")).name());
+
+        this.metrics = metrics;
+        this.heartbeat = new Heartbeat(this.logger, this.tag, this, config, metrics);
+        this.responseTimeout = new ResponseTimeout(config, metrics);
+        this.link = supervisor.supervise(endpoint.label("Sender"), this, this.heartbeat);
+        this.outbox = this.openOutbox(config, endpoint);
+        if (this.outbox != null) {
+            this.sentPosition = this.outbox.readPosition();
+            this.heartbeat.track(() -> this.sentPosition, this::confirm);
+        }
+        this.queue = new OutboundQueue(this.logger, config, this::writeBatch, this::idle, config.getLong("outbox.sync_interval", 1000));
+        this.queue.start();
+        this.gate = new ReadinessGate(config.getInt("startup.gate_capacity", 1024), config.getLong("startup.gate_timeout", 10000), this.queue::offer);
+        String suffix = endpoint.isDefault() ? "" : "." + endpoint.id();
+        metrics.gauge("sender_queue_depth" + suffix, this.queue::depth);
+        metrics.gauge("sender_dropped" + suffix, this.queue::droppedCount);
+        metrics.gauge("sender_pending" + suffix, this.pending::size);
+        metrics.gauge("sender_gate_dropped" + suffix, this.gate::droppedCount);
+    }
+
+    // Whether config asks for one socket carrying both directions instead of the two dedicated ones
+    public static boolean isMultiplexed(Configuration config) {
+        return "single".equalsIgnoreCase(config.getString("connection.mode", "dual"));
+    }
+
+    private static String path(Configuration config) {
+        return isMultiplexed(config) ? config.getString("connection.path", "websocket/connection") : "websocket/bot";
+    }
+
+    // Route "minecraft" channel requests to the listener; only used in single-connection mode
+    public void attachListener(WsListener listener) {
+        this.listener = listener;
+    }
+
+    // Send a message tagged with another channel over this socket
+    void sendOnChannel(String channel, WireMessage message) {
+        long start = System.nanoTime();
+        int bytes = this.codec.send(this, channel, message);
+        this.sent(start, bytes);
+    }
+
+    // Account one written frame
+    private void sent(long start, int bytes) {
+        this.metrics.encodeTime.record(System.nanoTime() - start);
+        this.metrics.framesOut.increment();
+        this.metrics.bytesOut.add(bytes);
+    }
+
+    // Every endpoint keeps its own outbox; the default one stays where single-bot installs had it
+    private Outbox openOutbox(Configuration config, Endpoint endpoint) {
+        if (!config.getBoolean("outbox.enabled", true)) return null;
+        File directory = new File(this.plugin.getDataFolder(), "outbox");
+        if (!endpoint.isDefault()) directory = new File(directory, endpoint.id());
+        try {
+            return new Outbox(this.logger, directory, config);
+        } catch (IOException | RuntimeException e) {
+            logger.warning(this.tag + "无法打开事件发件箱，断线期间的事件将不会被保存：" + e.getMessage());
+            return null;
+        }
+    }
+
+    // With permessage-deflate a frame is compressed before the library takes its write lock, so compressing
+    // and queueing happen together here; otherwise the bot could receive frames out of deflater order
+    @Override
+    public void send(ByteBuffer bytes) {
+        synchronized (this.sendLock) {
+            super.send(bytes);
+        }
+    }
+
+    @Override
+    public void send(String text) {
+        synchronized (this.sendLock) {
+            super.send(text);
+        }
     }
 
     // Check if the WebSocket is connected
@@ -41,161 +186,469 @@ public class WsSender extends WebSocketClient {
         return this.isOpen() && !this.isClosed() && !this.isClosing();
     }
 
-    // Attempt to reconnect asynchronously to avoid blocking the main thread
-    public void tryReconnect() {
-        plugin.getServer().getScheduler().runTask(plugin, () -> {
-            for (int count = 0; count < 3; count++) {
-                if (this.isConnected()) {
-                    logger.info("[Sender] 已经连接，无需重连！");
-                    return;
-                }
-                logger.warning("[Sender] 检测到与机器人的连接已断开！正在尝试重连……");
+    public ConnectionSupervisor.Link getLink() {
+        return this.link;
+    }
 
-                this.reconnect();
-                if (this.isConnected()) {
-                    logger.info("[Sender] 与机器人连接成功！");
-                    return;
-                }
-                // Schedule the next retry after a short delay
-                int delayInSeconds = 2;
-                plugin.getServer().getScheduler().runTaskLater(plugin, this::reconnect, delayInSeconds * 20L);  // 2 seconds delay (20 ticks = 1 second in Minecraft)
-                return;
-            }
-            logger.warning("[Sender] 重连失败！");
-        });
+    // Ask the supervisor for a reconnect; never blocks, and does nothing while the circuit is open
+    public void tryReconnect() {
+        this.link.requestReconnect();
     }
 
     // Send data to the server and optionally wait for a response
     public boolean sendData(String eventType, Object data, boolean waitResponse) {
-        if (!this.isConnected()) {
+        return sendDataAsync(eventType, data, waitResponse).join();
+    }
+
+    // Send data without blocking the caller; the future completes once the response arrives or times out
+    public CompletableFuture<Boolean> sendDataAsync(String eventType, Object data, boolean waitResponse) {
+        return sendDataAsync(eventType, data, waitResponse, false);
+    }
+
+    // Durable events are written to the outbox first and replayed after a reconnect if they could not be sent
+    public CompletableFuture<Boolean> sendDataAsync(String eventType, Object data, boolean waitResponse, boolean durable) {
+        return this.submit(eventType, data, waitResponse, durable, false);
+    }
+
+    // Until the connection first opens, events wait in the readiness gate; an event sent ahead bypasses it
+    private CompletableFuture<Boolean> submit(String eventType, Object data, boolean waitResponse, boolean durable, boolean ahead) {
+        boolean persist = durable && this.outbox != null;
+        if (!this.isConnected() && (ahead || this.gate.isOpen())) {
+            // Fails fast: nothing waits for the connection, durable events just wait in the outbox
             tryReconnect();
+            if (!persist) return CompletableFuture.completedFuture(false);
+        }
+
+        OutboundEvent event = new OutboundEvent(this.requestId.incrementAndGet(), eventType, data, waitResponse, persist);
+        // Register before queueing so a fast reply cannot arrive ahead of its entry
+        if (waitResponse) this.pending.put(event.message.id(), event);
+        boolean held = !ahead && this.gate.hold(event);
+        if (!held && !this.queue.offer(event)) {
+            this.pending.remove(event.message.id());
+            return CompletableFuture.completedFuture(false);
+        }
+
+        if (!waitResponse) return event.result;
+        // A held event's response timeout only starts once the gate lets it through
+        return held ? this.gate.opened().thenCompose(ignored -> this.awaitResponse(event)) : this.awaitResponse(event);
+    }
+
+    private CompletableFuture<Boolean> awaitResponse(OutboundEvent event) {
+        // Each request gets its own timeout, adapted to the round trips measured for its type
+        long timeout = this.responseTimeout.millis(event.message.type());
+        return event.result.orTimeout(timeout, TimeUnit.MILLISECONDS).handle((success, error) -> {
+            this.pending.remove(event.message.id());
+            if (error == null) return success;
+            if (error instanceof TimeoutException) {
+                this.metrics.timeouts.increment();
+                logger.warning(this.tag + "等待响应超时（" + timeout + " 毫秒）。");
+            }
+            else logger.warning(this.tag + "处理响应失败：" + error.getMessage());
             return false;
+        });
+    }
+
+    // Called on the writer thread with the events collected in one batch window
+    private void writeBatch(List<OutboundEvent> batch) {
+        long mark = 0;
+        if (this.outbox != null) {
+            this.prepareOutbox();
+            mark = this.outbox.writePosition();
+            // A response confirms the event's own record and everything before it, never the records after it:
+            // frames are separate on the legacy codec and a drop may lose the rest of the batch. Events that are
+            // not in the outbox confirm up to the last record before them.
+            long position = mark;
+            for (OutboundEvent event : batch) {
+                if (event.durable) {
+                    try {
+                        this.outbox.append(JsonWire.toBytes(event.message));
+                        position = this.outbox.writePosition();
+                    } catch (IOException e) {
+                        logger.warning(this.tag + "写入事件发件箱失败：" + e.getMessage());
+                    }
+                }
+                event.outboxPosition = position;
+            }
         }
 
-        HashMap<String, Object> messageData = new HashMap<>();
-        messageData.put("data", data);
-        messageData.put("type", eventType);
+        // Older undelivered events go out first so the bot sees them in order
+        if (!this.isConnected() || (this.outbox != null && !this.replay(mark))) {
+            this.failBatch(batch);
+            if (this.outbox != null) this.outbox.maybeSync();
+            return;
+        }
 
         try {
-            this.send(this.utils.encode(messageData));  // Send data as a Base64 encoded JSON string
+            for (OutboundEvent event : batch) this.batchMessages.add(event.message);
+            this.sendEvents(this.batchMessages);
         } catch (WebsocketNotConnectedException e) {
-            logger.warning("[Sender] 发送数据失败！与机器人的连接已断开。");
+            this.failBatch(batch);
+            return;
+        } finally {
+            this.batchMessages.clear();
+        }
+        for (OutboundEvent event : batch) {
+            if (!event.waitResponse) event.result.complete(true);
+        }
+        if (this.outbox != null) {
+            this.sentPosition = this.outbox.writePosition();
+            this.outbox.maybeSync();
+        }
+    }
+
+    // Writer thread: commit what the bot confirmed, and after a reconnect send again everything it did not
+    private void prepareOutbox() {
+        this.outbox.commit(Math.min(this.confirmed.get(), this.outbox.writePosition()));
+        if (this.resend) {
+            this.resend = false;
+            this.sentPosition = this.outbox.readPosition();
+        }
+    }
+
+    // The bot has received every outbox record before position
+    private void confirm(long position) {
+        this.confirmed.accumulateAndGet(position, Math::max);
+    }
+
+    // Several events share one frame when the negotiated codec understands batches; the bot still answers each
+    // one by its id. Bots on the legacy format get one frame per event.
+    private void sendEvents(List<EventMessage> events) {
+        Codec codec = this.codec;
+        long start = System.nanoTime();
+        if (events.size() > 1 && codec.supportsBatch()) {
+            this.sent(start, codec.sendBatch(this, this.channel, events));
+            return;
+        }
+        for (EventMessage event : events) {
+            this.sent(start, codec.send(this, this.channel, event));
+            start = System.nanoTime();
+        }
+    }
+
+    // Events that could not be written now; durable ones are still in the outbox and go out after a reconnect
+    private void failBatch(List<OutboundEvent> batch) {
+        int deferred = 0;
+        for (OutboundEvent event : batch) {
+            if (event.durable) deferred++;
+            this.pending.remove(event.message.id());
+            event.result.complete(false);
+        }
+        if (deferred < batch.size()) logger.warning(this.tag + "发送数据失败！与机器人的连接已断开。");
+        if (deferred > 0) logger.fine(this.tag + "与机器人的连接已断开，" + deferred + " 条事件已保存到发件箱，重新连接后补发。");
+    }
+
+    // Send the outbox records between the send position and limit; returns false if the connection dropped on the way
+    private boolean replay(long limit) {
+        List<byte[]> records = new ArrayList<>();
+        List<EventMessage> events = new ArrayList<>();
+        while (this.sentPosition < limit) {
+            long next = this.outbox.read(this.sentPosition, limit, 64, records);
+            for (byte[] record : records) {
+                try {
+                    if (JsonWire.read(record).message() instanceof EventMessage event) {
+                        events.add(new EventMessage(REPLAYED_ID, event.type(), event.data()));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    logger.warning(this.tag + "发件箱中有无法解析的事件，已跳过：" + e.getMessage());
+                }
+            }
+            if (!events.isEmpty()) {
+                this.expectReplayReplies(events);
+                try {
+                    this.sendEvents(events);
+                } catch (WebsocketNotConnectedException e) {
+                    return false;
+                }
+                logger.info(this.tag + "已补发 " + events.size() + " 条断线期间的事件。");
+            }
+            this.sentPosition = next;
+            records.clear();
+            events.clear();
+        }
+        return true;
+    }
+
+    // Whether the bot answers events of this type
+    static boolean expectsReply(String type) {
+        return !FIRE_AND_FORGET.contains(type);
+    }
+
+    private void expectReplayReplies(List<EventMessage> events) {
+        long now = System.nanoTime();
+        synchronized (this.replayReplies) {
+            for (EventMessage event : events) {
+                if (expectsReply(event.type())) this.replayReplies.add(now + TimeUnit.MILLISECONDS.toNanos(this.responseTimeout.millis(event.type())));
+            }
+        }
+    }
+
+    // Whether a reply belongs to a replayed event; replies expected longer ago than the response timeout are
+    // given up on, in case the bot does not answer every event
+    private boolean replayReply() {
+        long now = System.nanoTime();
+        synchronized (this.replayReplies) {
+            Long expires;
+            while ((expires = this.replayReplies.poll()) != null) {
+                if (expires - now > 0) return true;
+            }
             return false;
         }
+    }
+
+    private void clearReplayReplies() {
+        synchronized (this.replayReplies) {
+            this.replayReplies.clear();
+        }
+    }
+
+    // Runs on the writer thread when no events arrived for a while
+    private void idle() {
+        if (this.outbox == null) return;
+        this.prepareOutbox();
+        if (this.sentPosition < this.outbox.writePosition() && this.isConnected()) this.replay(this.outbox.writePosition());
+        this.outbox.maybeSync();
+    }
+
+    // Number of events waiting for the writer thread
+    public int getQueueDepth() {
+        return this.queue.depth();
+    }
 
-        if (!waitResponse) return true;
+    // Number of events dropped because the queue was full
+    public long getDroppedCount() {
+        return this.queue.droppedCount();
+    }
 
-        // Wait for response synchronously with a timeout of 5 seconds
-        return awaitResponse();
+    // Stop taking events, send what is already queued until the deadline (System.nanoTime), flush the outbox
+    // and close the connection; events that could not be sent stay in the outbox for the next start
+    public void shutdown(long deadline) throws InterruptedException {
+        // Events still held for a connection that never opened go to the writer, and so to the outbox
+        if (!this.gate.open(null)) {
+            // The timeout may still be releasing them on another thread
+            try {
+                this.gate.opened().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException ignored) {
+            }
+        }
+        this.queue.stop(deadline);
+        if (this.outbox != null) this.outbox.sync();
+        ConnectionSupervisor.close(this, deadline);
+        this.failPending();
     }
 
-    // Helper method to wait for a response with a timeout
-    private boolean awaitResponse() {
-        boolean responseReceived = false;
-        lock.lock();
+    // Immediate shutdown: queued events are failed rather than sent
+    public void shutdown() {
         try {
-            responseReceived = condition.await(5, TimeUnit.SECONDS);  // Wait for response with a 5-second timeout
+            this.shutdown(System.nanoTime());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-        } finally {
-            lock.unlock();
         }
+    }
 
-        if (!responseReceived) {
-            logger.warning("[Sender] 等待响应超时。");
-            return false;
+    // Log the outcome of an event once its response arrives
+    private CompletableFuture<Boolean> report(CompletableFuture<Boolean> future, String success, String failure) {
+        return future.thenApply(result -> {
+            if (result) logger.fine(success);
+            else logger.warning(failure);
+            return result;
+        });
+    }
+
+    // Complete the request a response belongs to
+    private void completeResponse(WireMessage message) {
+        if (!(message instanceof ResponseMessage response)) {
+            logger.fine(this.tag + "收到非响应消息，已忽略：" + message);
+            return;
         }
+        OutboundEvent event;
+        if (response.id() == REPLAYED_ID) {
+            this.replayReply();
+            return;
+        } else if (response.id() != 0) {
+            event = this.pending.remove(response.id());
+            if (event == null) {
+                logger.fine(this.tag + "收到已超时或未知请求 " + response.id() + " 的响应，已忽略。");
+                return;
+            }
+        } else {
+            // Older bots do not echo the id; replies to replayed events come first, then the oldest request's.
+            // Such bots never answer fire-and-forget events, so every id-less reply belongs to one of these.
+            if (this.replayReply()) return;
+            Map.Entry<Long, OutboundEvent> oldest = this.pending.pollFirstEntry();
+            if (oldest == null) return;
+            event = oldest.getValue();
+        }
+        this.metrics.roundTrip(event.message.type()).record(System.nanoTime() - event.createdAt);
+        if (event.outboxPosition > 0) this.confirm(event.outboxPosition);
+        event.result.complete(response.success());
+    }
 
-        // Return the success status from the response message
-        return (boolean) this.utils.decode(this.message).get("success");
+    // Fail every outstanding request at once instead of letting each wait for its timeout
+    private void failPending() {
+        Map.Entry<Long, OutboundEvent> entry;
+        while ((entry = this.pending.pollFirstEntry()) != null) entry.getValue().result.complete(false);
     }
 
     // Send server startup event
     public void sendServerStartup() {
-        if (sendData("server_startup", new HashMap<>(), true)) {
-            logger.fine("发送服务器启动消息成功！");
-        } else {
-            logger.warning("发送服务器启动消息失败！");
-        }
+        sendServerStartupAsync().join();
+    }
+
+    public CompletableFuture<Boolean> sendServerStartupAsync() {
+        return this.startupNotice(false);
+    }
+
+    // Send server_startup once the connection first opens, ahead of the events held back until then
+    public void sendServerStartupOnOpen() {
+        this.announceStartup = true;
+    }
+
+    private CompletableFuture<Boolean> startupNotice(boolean ahead) {
+        return report(submit("server_startup", new HashMap<>(), true, true, ahead), "发送服务器启动消息成功！", "发送服务器启动消息失败！");
     }
 
     // Send server shutdown event
     public void sendServerShutdown() {
-        if (sendData("server_shutdown", new HashMap<>(), true)) {
-            logger.fine("发送服务器关闭消息成功！");
-        } else {
-            logger.warning("发送服务器关闭消息失败！");
-        }
+        sendServerShutdownAsync().join();
+    }
+
+    public CompletableFuture<Boolean> sendServerShutdownAsync() {
+        return report(sendDataAsync("server_shutdown", new HashMap<>(), true, true), "发送服务器关闭消息成功！", "发送服务器关闭消息失败！");
     }
 
     // Send player left event
     public void sendPlayerLeft(String name) {
-        if (sendData("player_left", name, true)) {
-            logger.fine("发送玩家离开消息成功！");
-        } else {
-            logger.warning("发送玩家离开消息失败！");
-        }
+        sendPlayerLeftAsync(name).join();
+    }
+
+    public CompletableFuture<Boolean> sendPlayerLeftAsync(String name) {
+        return report(sendDataAsync("player_left", name, true, true), "发送玩家离开消息成功！", "发送玩家离开消息失败！");
     }
 
     // Send player joined event
     public void sendPlayerJoined(String name) {
-        if (sendData("player_joined", name, true)) {
-            logger.fine("发送玩家进入消息成功！");
-        } else {
-            logger.warning("发送玩家进入消息失败！");
-        }
+        sendPlayerJoinedAsync(name).join();
+    }
+
+    public CompletableFuture<Boolean> sendPlayerJoinedAsync(String name) {
+        return report(sendDataAsync("player_joined", name, true, true), "发送玩家进入消息成功！", "发送玩家进入消息失败！");
     }
 
     // Send player chat event
     public void sendPlayerChat(String name, String message) {
+        sendPlayerChatAsync(name, message).join();
+    }
+
+    public CompletableFuture<Boolean> sendPlayerChatAsync(String name, String message) {
         List<String> data = Arrays.asList(name, message);
-        if (sendData("player_chat", data, false)) {
-            logger.fine("发送玩家消息成功！");
-        } else {
-            logger.warning("发送玩家消息失败！");
-        }
+        return report(sendDataAsync("player_chat", data, expectsReply("player_chat"), true), "发送玩家消息成功！", "发送玩家消息失败！");
     }
 
     // Send player death event
     public void sendPlayerDeath(String name, String message) {
+        sendPlayerDeathAsync(name, message).join();
+    }
+
+    public CompletableFuture<Boolean> sendPlayerDeathAsync(String name, String message) {
         List<String> data = Arrays.asList(name, message);
-        if (sendData("player_death", data, true)) {
-            logger.fine("发送玩家死亡消息成功！");
-        } else {
-            logger.warning("发送玩家死亡消息失败！");
-        }
+        return report(sendDataAsync("player_death", data, true, true), "发送玩家死亡消息成功！", "发送玩家死亡消息失败！");
+    }
+
+    // Send an event captured on the thread that fired it
+    public CompletableFuture<Boolean> sendEventAsync(GameEvent event) {
+        return switch (event) {
+            case GameEvent.PlayerJoined joined -> sendPlayerJoinedAsync(joined.name());
+            case GameEvent.PlayerLeft left -> sendPlayerLeftAsync(left.name());
+            case GameEvent.PlayerChat chat -> sendPlayerChatAsync(chat.name(), chat.message());
+            case GameEvent.PlayerDeath death -> sendPlayerDeathAsync(death.name(), death.message());
+        };
     }
 
     // Send a synchronous message (wait for the response)
     public boolean sendSynchronousMessage(String message) {
-        return sendData("message", message, true);
+        return sendSynchronousMessageAsync(message).join();
+    }
+
+    // Send a message and complete the future with the bot's response, without blocking the caller
+    public CompletableFuture<Boolean> sendSynchronousMessageAsync(String message) {
+        return sendDataAsync("message", message, true);
+    }
+
+    @Override
+    public void onWebsocketPong(WebSocket conn, Framedata frame) {
+        this.heartbeat.pong(frame.getPayloadData());
     }
 
     @Override
     public void onOpen(ServerHandshake serverHandshake) {
-        logger.fine("[Sender] 与机器人成功建立链接！");
+        this.codec = Codecs.negotiated(serverHandshake.getFieldValue(Codecs.HEADER));
+        logger.fine(this.tag + "与机器人成功建立链接！消息格式：" + this.codec.name());
+        // Records sent over the previous connection but never confirmed go out again
+        this.resend = true;
+        this.link.connectionOpened();
+        if (this.firstOpen.compareAndSet(false, true)) {
+            Runnable notice = () -> {
+                if (this.announceStartup) this.startupNotice(true);
+            };
+            // The gate may already have opened on its timeout; the notice then simply goes next
+            if (!this.gate.open(notice)) notice.run();
+        }
     }
 
     @Override
     public void onMessage(String message) {
-        // Handle the received message and notify the waiting thread
-        lock.lock();
         try {
-            this.message = message;
-            condition.signalAll();
-        } finally {
-            lock.unlock();
+            this.received(message.length());
+            long start = System.nanoTime();
+            Envelope envelope = this.codec.read(message);
+            this.metrics.decodeTime.record(System.nanoTime() - start);
+            this.dispatch(envelope);
+        } catch (IOException | RuntimeException e) {
+            logger.warning(this.tag + "无法解析机器人的响应：" + e.getMessage());
+        }
+    }
+
+    // Account one received frame; Base64 text frames are ASCII, so their length is their size in bytes
+    private void received(int bytes) {
+        this.metrics.framesIn.increment();
+        this.metrics.bytesIn.add(bytes);
+    }
+
+    @Override
+    public void onMessage(ByteBuffer message) {
+        try {
+            this.received(message.remaining());
+            long start = System.nanoTime();
+            Envelope envelope = this.codec.read(message);
+            this.metrics.decodeTime.record(System.nanoTime() - start);
+            this.dispatch(envelope);
+        } catch (IOException | RuntimeException e) {
+            logger.warning(this.tag + "无法解析机器人的响应：" + e.getMessage());
+        }
+    }
+
+    private void dispatch(Envelope envelope) {
+        WsListener listener = this.listener;
+        if (this.multiplexed && MINECRAFT_CHANNEL.equals(envelope.channel()) && listener != null) {
+            // A request for the listener; its answer goes back on the same channel
+            listener.handle(envelope.message(), response -> this.sendOnChannel(MINECRAFT_CHANNEL, response));
+            return;
         }
+        // Hand the response to the request it belongs to
+        this.completeResponse(envelope.message());
     }
 
     @Override
     public void onClose(int code, String reason, boolean remote) {
-        logger.info("[Sender] 与机器人的连接已断开！");
+        logger.info(this.tag + "与机器人的连接已断开！");
+        this.failPending();
+        this.clearReplayReplies();
+        this.link.connectionLost();
     }
 
     @Override
     public void onError(Exception ex) {
-        logger.warning("[Sender] 机器人连接发生 " + ex.getMessage() + " 错误！");
+        logger.warning(this.tag + "机器人连接发生 " + ex.getMessage() + " 错误！");
         ex.printStackTrace();
     }
 }
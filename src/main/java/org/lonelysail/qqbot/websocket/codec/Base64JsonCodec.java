@@ -0,0 +1,38 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+import org.java_websocket.WebSocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// The original wire format: JSON, Base64 encoded, in a text frame
+final class Base64JsonCodec implements Codec {
+    @Override
+    public String name() {
+        return "base64";
+    }
+
+    @Override
+    public int send(WebSocket socket, String channel, WireMessage message) {
+        return this.emit(socket, JsonWire.write(channel, message));
+    }
+
+    // Bots that only speak this format predate batch frames and would answer one once, without ids
+    @Override
+    public boolean supportsBatch() {
+        return false;
+    }
+
+    @Override
+    public int sendBatch(WebSocket socket, String channel, List<EventMessage> events) {
+        return this.emit(socket, JsonWire.writeBatch(channel, events));
+    }
+
+    private int emit(WebSocket socket, Utf8Buffer json) {
+        ByteBuffer encoded = Codecs.BASE64_ENCODER.encode(json.asByteBuffer());
+        String frame = new String(encoded.array(), 0, encoded.limit(), StandardCharsets.ISO_8859_1);
+        socket.send(frame);
+        return encoded.limit();
+    }
+}
@@ -0,0 +1,29 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+import org.java_websocket.WebSocket;
+
+import java.util.List;
+
+// Raw UTF-8 JSON in binary frames, written straight from the reusable per-thread buffer
+final class BinaryJsonCodec implements Codec {
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public int send(WebSocket socket, String channel, WireMessage message) {
+        return this.emit(socket, JsonWire.write(channel, message));
+    }
+
+    @Override
+    public int sendBatch(WebSocket socket, String channel, List<EventMessage> events) {
+        return this.emit(socket, JsonWire.writeBatch(channel, events));
+    }
+
+    private int emit(WebSocket socket, Utf8Buffer json) {
+        // The frame is built from the buffer before send returns, so the buffer can be reused afterwards
+        socket.send(json.asByteBuffer());
+        return json.size();
+    }
+}
@@ -0,0 +1,9 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+import java.util.List;
+
+// A chat message from the QQ group to broadcast on the server, as a list of colored sections
+public record BroadcastMessage(long id, List<Section> sections) implements WireMessage {
+    public record Section(TextColor color, String text) {
+    }
+}
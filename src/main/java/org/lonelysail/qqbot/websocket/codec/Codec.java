@@ -0,0 +1,47 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+import org.java_websocket.WebSocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Turns typed messages into websocket frames and back.
+// Text frames always carry the legacy Base64 JSON format and binary frames raw UTF-8 JSON,
+// so any codec can read what the bot sends; the negotiated codec only decides how we write.
+public interface Codec {
+    // Name announced in and accepted through the "codec" handshake header
+    String name();
+
+    // Write one message to the socket, tagged with a channel when the socket is multiplexed;
+    // returns the payload size in bytes
+    int send(WebSocket socket, String channel, WireMessage message);
+
+    // Write several events as one "batch" frame; returns the payload size in bytes
+    int sendBatch(WebSocket socket, String channel, List<EventMessage> events);
+
+    // Whether a bot that negotiated this codec understands batch frames
+    default boolean supportsBatch() {
+        return true;
+    }
+
+    default int send(WebSocket socket, WireMessage message) {
+        return this.send(socket, null, message);
+    }
+
+    default Envelope read(String frame) throws IOException {
+        return JsonWire.read(Codecs.BASE64_DECODER.decode(frame));
+    }
+
+    default Envelope read(ByteBuffer frame) throws IOException {
+        return JsonWire.read(frame);
+    }
+
+    default WireMessage decode(String frame) throws IOException {
+        return this.read(frame).message();
+    }
+
+    default WireMessage decode(ByteBuffer frame) throws IOException {
+        return this.read(frame).message();
+    }
+}
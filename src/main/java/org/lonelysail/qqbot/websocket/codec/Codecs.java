@@ -0,0 +1,29 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+import java.util.Base64;
+
+// The available codecs and the handshake negotiation between them
+public final class Codecs {
+    public static final String HEADER = "codec";
+
+    static final Base64.Decoder BASE64_DECODER = Base64.getDecoder();
+    static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder();
+
+    // Base64 JSON text frames, understood by every bot version
+    public static final Codec LEGACY = new Base64JsonCodec();
+    // Raw UTF-8 JSON in binary frames, without the Base64 overhead
+    public static final Codec JSON = new BinaryJsonCodec();
+
+    private Codecs() {
+    }
+
+    // The codec to offer in the handshake, from the "codec" config option
+    public static Codec preferred(String configured) {
+        return JSON.name().equalsIgnoreCase(configured) ? JSON : LEGACY;
+    }
+
+    // The codec to write with once the bot answered the handshake; bots that do not echo the header get the legacy format
+    public static Codec negotiated(String accepted) {
+        return JSON.name().equalsIgnoreCase(accepted) ? JSON : LEGACY;
+    }
+}
@@ -0,0 +1,5 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+// A decoded frame together with the channel it was tagged with; the channel is null on dedicated sockets
+public record Envelope(String channel, WireMessage message) {
+}
@@ -0,0 +1,5 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+// An event sent to the bot, or a request received from it
+public record EventMessage(long id, String type, Object data) implements WireMessage {
+}
@@ -0,0 +1,285 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Streams typed messages to and from the JSON shape the bot understands:
+//   event     {"id": 1, "type": "player_joined", "data": ...}
+//   response  {"id": 1, "success": true, "data": ...}
+//   batch     {"type": "batch", "data": [event, ...]}
+// On a multiplexed connection the top-level object also carries {"channel": "bot" | "minecraft"}.
+public final class JsonWire {
+    // One buffer per thread: the writer thread and the listener thread never share one
+    private static final ThreadLocal<Utf8Buffer> BUFFER = ThreadLocal.withInitial(Utf8Buffer::new);
+
+    private JsonWire() {
+    }
+
+    // Encode into this thread's buffer; the result is only valid until the next call on the same thread
+    static Utf8Buffer write(String channel, WireMessage message) {
+        Utf8Buffer buffer = BUFFER.get();
+        buffer.reset();
+        try {
+            JsonWriter writer = new JsonWriter(buffer);
+            writeMessage(writer, channel, message);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer;
+    }
+
+    static Utf8Buffer writeBatch(String channel, List<EventMessage> events) {
+        Utf8Buffer buffer = BUFFER.get();
+        buffer.reset();
+        try {
+            JsonWriter writer = new JsonWriter(buffer);
+            writer.beginObject();
+            if (channel != null) writer.name("channel").value(channel);
+            writer.name("type").value("batch");
+            writer.name("data").beginArray();
+            for (EventMessage event : events) writeMessage(writer, null, event);
+            writer.endArray();
+            writer.endObject();
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer;
+    }
+
+    // Codec independent UTF-8 JSON of a message, e.g. for the outbox
+    public static byte[] toBytes(WireMessage message) {
+        return write(null, message).toByteArray();
+    }
+
+    // Serialize a plain value once so it can be reused in many frames
+    public static RawJson toRawJson(Object value) {
+        Utf8Buffer buffer = BUFFER.get();
+        buffer.reset();
+        try {
+            JsonWriter writer = new JsonWriter(buffer);
+            writeValue(writer, value);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new RawJson(new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static void writeMessage(JsonWriter writer, String channel, WireMessage message) throws IOException {
+        writer.beginObject();
+        if (channel != null) writer.name("channel").value(channel);
+        if (message.id() != 0) writer.name("id").value(message.id());
+        switch (message) {
+            case EventMessage event -> {
+                writer.name("type").value(event.type());
+                writer.name("data");
+                writeValue(writer, event.data());
+            }
+            case ResponseMessage response -> {
+                writer.name("success").value(response.success());
+                if (response.data() != null) {
+                    writer.name("data");
+                    writeValue(writer, response.data());
+                }
+            }
+            case BroadcastMessage broadcast -> {
+                writer.name("type").value("message");
+                writer.name("data").beginArray();
+                for (BroadcastMessage.Section section : broadcast.sections()) {
+                    writer.beginObject();
+                    writer.name("color").value(section.color().wireName);
+                    writer.name("text").value(section.text());
+                    writer.endObject();
+                }
+                writer.endArray();
+            }
+        }
+        writer.endObject();
+    }
+
+    private static void writeValue(JsonWriter writer, Object value) throws IOException {
+        switch (value) {
+            case null -> writer.nullValue();
+            case RawJson raw -> writer.jsonValue(raw.json());
+            case String string -> writer.value(string);
+            case Boolean bool -> writer.value(bool);
+            case Number number -> writer.value(number);
+            case Map<?, ?> map -> {
+                writer.beginObject();
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writer.name(String.valueOf(entry.getKey()));
+                    writeValue(writer, entry.getValue());
+                }
+                writer.endObject();
+            }
+            case Iterable<?> iterable -> {
+                writer.beginArray();
+                for (Object item : iterable) writeValue(writer, item);
+                writer.endArray();
+            }
+            case Object[] array -> {
+                writer.beginArray();
+                for (Object item : array) writeValue(writer, item);
+                writer.endArray();
+            }
+            default -> writer.value(value.toString());
+        }
+    }
+
+    public static Envelope read(byte[] json) throws IOException {
+        return read(new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8)));
+    }
+
+    static Envelope read(ByteBuffer json) throws IOException {
+        if (!json.hasArray()) {
+            byte[] copy = new byte[json.remaining()];
+            json.get(copy);
+            return read(copy);
+        }
+        ByteArrayInputStream input = new ByteArrayInputStream(json.array(), json.arrayOffset() + json.position(), json.remaining());
+        return read(new JsonReader(new InputStreamReader(input, StandardCharsets.UTF_8)));
+    }
+
+    private static Envelope read(JsonReader reader) throws IOException {
+        String channel = null;
+        long id = 0;
+        String type = null;
+        Boolean success = null;
+        Object data = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "channel" -> channel = reader.nextString();
+                case "id" -> id = readId(reader);
+                case "type" -> type = reader.nextString();
+                case "success" -> success = reader.nextBoolean();
+                // Broadcast sections are read straight into the typed model when the type came first
+                case "data" -> data = "message".equals(type) ? readSections(reader) : readValue(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (success != null) return new Envelope(channel, new ResponseMessage(id, success, data));
+        if (type == null) throw new IOException("消息缺少 type 字段");
+        if ("message".equals(type)) return new Envelope(channel, new BroadcastMessage(id, toSections(data)));
+        return new Envelope(channel, new EventMessage(id, type, data));
+    }
+
+    // Ids are normally numbers, but old frames may carry them as "12.0" or as strings
+    private static long readId(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        try {
+            return (long) Double.parseDouble(reader.nextString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_ARRAY -> {
+                List<Object> list = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) list.add(readValue(reader));
+                reader.endArray();
+                return list;
+            }
+            case BEGIN_OBJECT -> {
+                Map<String, Object> map = new LinkedHashMap<>();
+                reader.beginObject();
+                while (reader.hasNext()) map.put(reader.nextName(), readValue(reader));
+                reader.endObject();
+                return map;
+            }
+            case NUMBER -> {
+                String number = reader.nextString();
+                if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+                    try {
+                        return Long.parseLong(number);
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+                return Double.parseDouble(number);
+            }
+            case BOOLEAN -> {
+                return reader.nextBoolean();
+            }
+            case NULL -> {
+                reader.nextNull();
+                return null;
+            }
+            default -> {
+                return reader.nextString();
+            }
+        }
+    }
+
+    private static List<BroadcastMessage.Section> readSections(JsonReader reader) throws IOException {
+        List<BroadcastMessage.Section> sections = new ArrayList<>();
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return sections;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            TextColor color = TextColor.GRAY;
+            String text = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                } else if (name.equals("color")) {
+                    color = TextColor.of(reader.nextString());
+                } else if (name.equals("text")) {
+                    text = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            sections.add(new BroadcastMessage.Section(color, text == null ? "" : text));
+        }
+        reader.endArray();
+        return sections;
+    }
+
+    // For frames where "data" came before "type" and was read generically
+    @SuppressWarnings("unchecked")
+    private static List<BroadcastMessage.Section> toSections(Object data) {
+        if (data instanceof List<?> list && (list.isEmpty() || list.get(0) instanceof BroadcastMessage.Section)) {
+            return (List<BroadcastMessage.Section>) list;
+        }
+        List<BroadcastMessage.Section> sections = new ArrayList<>();
+        if (!(data instanceof List<?> list)) return sections;
+        for (Object item : list) {
+            if (!(item instanceof Map<?, ?> map)) continue;
+            Object color = map.get("color");
+            Object text = map.get("text");
+            sections.add(new BroadcastMessage.Section(TextColor.of(color == null ? null : color.toString()), text == null ? "" : text.toString()));
+        }
+        return sections;
+    }
+}
@@ -0,0 +1,5 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+// A value that is already serialized; written into frames as-is so it is only encoded once
+public record RawJson(String json) {
+}
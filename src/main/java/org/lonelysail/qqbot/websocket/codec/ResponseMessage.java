@@ -0,0 +1,5 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+// The answer to an EventMessage carrying the same id
+public record ResponseMessage(long id, boolean success, Object data) implements WireMessage {
+}
@@ -0,0 +1,33 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+// The colors a broadcast section may name, in the order of Minecraft's color codes
+public enum TextColor {
+    BLACK, DARK_BLUE, DARK_GREEN, DARK_AQUA, DARK_RED, DARK_PURPLE, GOLD, GRAY,
+    DARK_GRAY, BLUE, GREEN, AQUA, RED, LIGHT_PURPLE, YELLOW, WHITE;
+
+    // Lowercase name as used on the wire
+    public final String wireName = this.name().toLowerCase();
+
+    // Unknown or missing colors render as gray, as before
+    public static TextColor of(String name) {
+        if (name == null) return GRAY;
+        return switch (name) {
+            case "black" -> BLACK;
+            case "dark_blue" -> DARK_BLUE;
+            case "dark_green" -> DARK_GREEN;
+            case "dark_aqua" -> DARK_AQUA;
+            case "dark_red" -> DARK_RED;
+            case "dark_purple" -> DARK_PURPLE;
+            case "gold" -> GOLD;
+            case "dark_gray" -> DARK_GRAY;
+            case "blue" -> BLUE;
+            case "green" -> GREEN;
+            case "aqua" -> AQUA;
+            case "red" -> RED;
+            case "light_purple" -> LIGHT_PURPLE;
+            case "yellow" -> YELLOW;
+            case "white" -> WHITE;
+            default -> GRAY;
+        };
+    }
+}
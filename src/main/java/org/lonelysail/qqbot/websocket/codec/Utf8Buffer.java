@@ -0,0 +1,93 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// A Writer that encodes straight into a growable UTF-8 byte array, reused between frames
+final class Utf8Buffer extends Writer {
+    private byte[] bytes = new byte[1024];
+    private int size;
+    private char highSurrogate;
+
+    void reset() {
+        this.size = 0;
+        this.highSurrogate = 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(this.bytes, this.size);
+    }
+
+    // A view over the written bytes, valid until the next reset
+    ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(this.bytes, 0, this.size);
+    }
+
+    private void ensure(int extra) {
+        if (this.size + extra > this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.size + extra));
+        }
+    }
+
+    @Override
+    public void write(int c) {
+        this.writeChar((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        this.ensure(length * 3);
+        for (int i = offset; i < offset + length; i++) this.writeChar(chars[i]);
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+        this.ensure(length * 3);
+        for (int i = offset; i < offset + length; i++) this.writeChar(string.charAt(i));
+    }
+
+    private void writeChar(char c) {
+        this.ensure(4);
+        if (this.highSurrogate != 0) {
+            char high = this.highSurrogate;
+            this.highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                this.bytes[this.size++] = (byte) (0xF0 | (codePoint >> 18));
+                this.bytes[this.size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                this.bytes[this.size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                this.bytes[this.size++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            this.bytes[this.size++] = '?';
+            this.ensure(4);
+        }
+        if (c < 0x80) {
+            this.bytes[this.size++] = (byte) c;
+        } else if (c < 0x800) {
+            this.bytes[this.size++] = (byte) (0xC0 | (c >> 6));
+            this.bytes[this.size++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            this.highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            this.bytes[this.size++] = '?';
+        } else {
+            this.bytes[this.size++] = (byte) (0xE0 | (c >> 12));
+            this.bytes[this.size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            this.bytes[this.size++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,7 @@
+package org.lonelysail.qqbot.websocket.codec;
+
+// A typed frame exchanged with the bot
+public sealed interface WireMessage permits EventMessage, ResponseMessage, BroadcastMessage {
+    // Id used to match a response to its request; 0 when the peer did not send one
+    long id();
+}
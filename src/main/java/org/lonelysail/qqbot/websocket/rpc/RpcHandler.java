@@ -0,0 +1,8 @@
+package org.lonelysail.qqbot.websocket.rpc;
+
+// Handles one type of request from the bot. The returned value becomes the response data; a CompletionStage
+// is waited for, and an exception is answered with a failed response carrying its message.
+@FunctionalInterface
+public interface RpcHandler<T> {
+    Object handle(T data) throws Exception;
+}
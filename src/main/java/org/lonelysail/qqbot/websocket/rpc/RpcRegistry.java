@@ -0,0 +1,128 @@
+package org.lonelysail.qqbot.websocket.rpc;
+
+import org.lonelysail.qqbot.metrics.Metrics;
+import org.lonelysail.qqbot.websocket.codec.EventMessage;
+import org.lonelysail.qqbot.websocket.codec.ResponseMessage;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Request handlers by event type, available to other plugins through the Bukkit services manager.
+// Every request runs on its own virtual thread, so a slow handler never holds up the websocket read thread;
+// a per-type semaphore limits how many requests of one type run at once. Handlers registered as main-thread
+// handlers are handed to the main-thread executor, which runs everything queued in the same tick together.
+public class RpcRegistry {
+    private final Logger logger;
+    private final Executor mainThread;
+    private final int defaultConcurrency;
+    private final Metrics metrics;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Registration<?>> handlers = new ConcurrentHashMap<>();
+
+    public RpcRegistry(Logger logger, Executor mainThread, int defaultConcurrency, Metrics metrics) {
+        this.logger = logger;
+        this.metrics = metrics;
+        this.mainThread = mainThread;
+        this.defaultConcurrency = Math.max(1, defaultConcurrency);
+    }
+
+    public <T> void register(String type, Class<T> dataType, RpcHandler<T> handler) {
+        this.register(type, dataType, handler, false, this.defaultConcurrency);
+    }
+
+    // Replaces any handler already registered for the type
+    public <T> void register(String type, Class<T> dataType, RpcHandler<T> handler, boolean mainThread, int maxConcurrency) {
+        this.handlers.put(type, new Registration<>(dataType, handler, mainThread, new Semaphore(Math.max(1, maxConcurrency))));
+    }
+
+    public void unregister(String type) {
+        this.handlers.remove(type);
+    }
+
+    public boolean isRegistered(String type) {
+        return this.handlers.containsKey(type);
+    }
+
+    // Called on the websocket read thread; the response is sent from the handler's virtual thread
+    public void dispatch(EventMessage request, Consumer<ResponseMessage> reply) {
+        Registration<?> registration = this.handlers.get(request.type());
+        if (registration == null) {
+            this.logger.warning("[Listener] 未知的事件类型: " + request.type());
+            reply.accept(new ResponseMessage(request.id(), false, null));
+            return;
+        }
+        this.executor.execute(() -> reply.accept(this.invoke(registration, request)));
+    }
+
+    private <T> ResponseMessage invoke(Registration<T> registration, EventMessage request) {
+        try {
+            T data = registration.convert(request.data());
+            registration.permits.acquire();
+            long start = System.nanoTime();
+            try {
+                Object result;
+                if (registration.mainThread) {
+                    CompletableFuture<Object> future = new CompletableFuture<>();
+                    this.mainThread.execute(() -> {
+                        try {
+                            future.complete(registration.handler.handle(data));
+                        } catch (Exception e) {
+                            future.completeExceptionally(e);
+                        }
+                    });
+                    result = future.get();
+                } else {
+                    result = registration.handler.handle(data);
+                }
+                // Asynchronous handlers keep their permit until they finish
+                if (result instanceof CompletionStage<?> stage) result = stage.toCompletableFuture().get();
+                return new ResponseMessage(request.id(), true, result);
+            } finally {
+                registration.permits.release();
+                this.metrics.handlerTime(request.type()).record(System.nanoTime() - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ResponseMessage(request.id(), false, null);
+        } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            this.logger.warning("[Listener] 处理 " + request.type() + " 请求时发生错误：" + cause.getMessage());
+            return new ResponseMessage(request.id(), false, cause.getMessage());
+        }
+    }
+
+    // Let running requests finish until the deadline (System.nanoTime), then interrupt the rest
+    public void shutdown(long deadline) {
+        this.executor.shutdown();
+        try {
+            if (this.executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.logger.warning("[Listener] 仍有请求未处理完毕，已中断。");
+        this.executor.shutdownNow();
+    }
+
+    public void shutdown() {
+        this.shutdown(System.nanoTime());
+    }
+
+    private record Registration<T>(Class<T> dataType, RpcHandler<T> handler, boolean mainThread, Semaphore permits) {
+        T convert(Object data) {
+            if (data == null || this.dataType.isInstance(data)) return this.dataType.cast(data);
+            // Requests from older bots carry their arguments as plain strings
+            if (this.dataType == String.class) return this.dataType.cast(String.valueOf(data));
+            throw new IllegalArgumentException("请求数据应为 " + this.dataType.getSimpleName() + "，实际为 " + data.getClass().getSimpleName());
+        }
+    }
+}